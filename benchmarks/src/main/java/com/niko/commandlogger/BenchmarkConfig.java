@@ -0,0 +1,27 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The plugin's own config.yml (from its jar), so benchmarks measure the shipped phrases and templates.
+ */
+final class BenchmarkConfig {
+
+    private BenchmarkConfig() {
+    }
+
+    static YamlConfiguration defaults() {
+        try (InputStream in = BenchmarkConfig.class.getResourceAsStream("/config.yml")) {
+            if (in == null) throw new IllegalStateException("config.yml not found, is the plugin jar on the classpath?");
+            return YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.niko.commandlogger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text extraction from chat component JSON, the per-packet work of the packet listener
+ * (formerly extractPlainTextFromJson). "scan" is what the listener really does: extract
+ * straight into the feedback matcher, stopping once the result is decided.
+ * legacyExtractPlainText is the old string slicing, which only understood flat
+ * {"text":"..."} components and returns null (the packet's raw string) for the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatTextExtractorBenchmark {
+
+    @Param({"plain", "chat", "nested", "translate"})
+    public String message;
+
+    private String json;
+    private PhraseMatcher matcher;
+
+    @Setup
+    public void setup() {
+        json = switch (message) {
+            case "plain" -> "{\"text\":\"You do not have permission to use this command.\",\"color\":\"red\"}";
+            // A player chat line as most chat plugins send it
+            case "chat" -> "{\"text\":\"\",\"extra\":[{\"text\":\"[Member] \",\"color\":\"gray\"},"
+                    + "{\"text\":\"Steve\",\"color\":\"white\",\"hoverEvent\":{\"action\":\"show_text\",\"contents\":\"Click to message\"}},"
+                    + "{\"text\":\": \",\"color\":\"dark_gray\"},{\"text\":\"anyone up for the nether later? bring food\"}]}";
+            case "nested" -> "{\"text\":\"\",\"extra\":[{\"text\":\"[Server] \",\"bold\":true,\"extra\":[{\"text\":\"\",\"extra\":"
+                    + "[{\"text\":\"Teleported \",\"color\":\"gold\"},{\"text\":\"Steve\",\"color\":\"yellow\"},{\"text\":\" to \"},"
+                    + "{\"text\":\"Alex\",\"color\":\"yellow\"}]}]},{\"text\":\" (12, 64, -340)\",\"color\":\"gray\"}]}";
+            case "translate" -> "{\"translate\":\"command.unknown.command\",\"color\":\"red\",\"extra\":[{\"text\":\"\\n\"},"
+                    + "{\"translate\":\"command.context.here\",\"italic\":true,\"with\":[{\"text\":\"blorp\"}]}]}";
+            default -> throw new IllegalArgumentException(message);
+        };
+        matcher = PhraseMatcher.fromConfig(BenchmarkConfig.defaults().getConfigurationSection("feedback-phrases"),
+                "no-permission", "unknown-command");
+    }
+
+    @Benchmark
+    public String extractPlainText() throws IOException {
+        return ChatTextExtractor.extractPlainText(json);
+    }
+
+    @Benchmark
+    public int scan() throws IOException {
+        PhraseMatcher.Scan scan = matcher.startScan();
+        ChatTextExtractor.extract(json, scan);
+        return scan.result();
+    }
+
+    @Benchmark
+    public String legacyExtractPlainText() {
+        return legacyExtractPlainTextFromJson(json);
+    }
+
+    // The extraction before ChatTextExtractor, copied from CommandWebhookListener
+    private static String legacyExtractPlainTextFromJson(String jsonString) {
+        if (jsonString == null || jsonString.isEmpty()) return null;
+        String trimmed = jsonString.trim();
+        if (trimmed.startsWith("{\"text\":\"") && trimmed.endsWith("}")) {
+            int start = trimmed.indexOf("\"text\":\"") + 8;
+            int end = trimmed.lastIndexOf("\"}");
+            if (start != -1 && end != -1 && start < end) {
+                return trimmed.substring(start, end).replace("\\\"", "\"");
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.niko.commandlogger;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifying a typed command line against the command map, done on the main thread for every command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandIndexBenchmark {
+
+    // Roughly a server with a few dozen plugins: label, namespaced label and two aliases per command
+    @Param({"500", "5000"})
+    public int commands;
+
+    private CommandIndex index;
+
+    private static final class BenchCommand extends Command {
+        BenchCommand(String name, List<String> aliases) {
+            super(name, "", "/" + name, aliases);
+            setPermission("bench." + name);
+        }
+
+        @Override
+        public boolean execute(CommandSender sender, String label, String[] args) {
+            return true;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Map<String, Command> known = new HashMap<>();
+        for (int i = 0; i < commands / 4; i++) {
+            String name = "command" + i;
+            Command command = new BenchCommand(name, List.of("c" + i, "cmd" + i));
+            known.put(name, command);
+            known.put("plugin" + (i % 40) + ":" + name, command);
+            known.put("c" + i, command);
+            known.put("cmd" + i, command);
+        }
+        index = CommandIndex.build(known);
+    }
+
+    @Benchmark
+    public Object hit() {
+        return index.lookupCommandLine("/Command7 Steve 10 64 10");
+    }
+
+    @Benchmark
+    public Object namespacedHit() {
+        return index.lookupCommandLine("/plugin7:command7 Steve");
+    }
+
+    @Benchmark
+    public Object miss() {
+        return index.lookupCommandLine("/definitelynotacommand with some arguments");
+    }
+}
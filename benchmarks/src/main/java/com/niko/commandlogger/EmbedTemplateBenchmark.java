@@ -0,0 +1,166 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building embed JSON: placeholders filled into a compiled template (formerly
+ * replacePlaceholders plus string concatenation) and JSON escaping of values (formerly
+ * escapeJson), all written as UTF-8 by JsonWriter. legacyRender is the old path, config
+ * lookups, chained replace() and a StringBuilder per command, for comparison with render.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbedTemplateBenchmark {
+
+    private static final String PLAIN = "/give Steve minecraft:diamond_sword 1";
+    private static final String NEEDS_ESCAPING = "/tellraw @a {\"text\":\"C:\\\\temp\tdir\",\"color\":\"red\"}\r\n/say \"hi\" \u00e9\u2603";
+
+    private final JsonWriter out = new JsonWriter();
+    private EmbedTemplate executed;
+    private TemplateString title;
+    private TemplateValues values;
+    private TemplateValues summary;
+    private YamlConfiguration config;
+    private ConfigurationSection legacyTemplate;
+
+    @Setup
+    public void setup() {
+        config = BenchmarkConfig.defaults();
+        legacyTemplate = config.getConfigurationSection("templates.executed");
+        executed = EmbedTemplate.compileAll(config).get("executed");
+        title = TemplateString.compile(config.getString("templates.executed.title"));
+        values = new TemplateValues("player", "Steve", PLAIN, "<@123456789012345678>", "admin",
+                "world", 12, 64, -340, 1, null);
+        summary = new TemplateValues("player", "Steve", PLAIN, "<@123456789012345678>", "admin",
+                "world", 12, 64, -340, 37, "10s");
+    }
+
+    @Benchmark
+    public int render() {
+        out.reset();
+        return executed.render(out, values);
+    }
+
+    @Benchmark
+    public int legacyRender() {
+        return legacyRender(config, legacyTemplate, "Steve", PLAIN, "<@123456789012345678>", "admin",
+                "world", 12, 64, -340).length;
+    }
+
+    @Benchmark
+    public int renderSummary() {
+        out.reset();
+        return executed.render(out, summary);
+    }
+
+    @Benchmark
+    public int placeholders() {
+        out.reset();
+        out.beginText(JsonWriter.MAX_TITLE);
+        title.writeTo(out, values);
+        return out.endText();
+    }
+
+    @Benchmark
+    public int escapePlain() {
+        out.reset();
+        return out.string(PLAIN).length();
+    }
+
+    @Benchmark
+    public int escapeQuoted() {
+        out.reset();
+        return out.string(NEEDS_ESCAPING).length();
+    }
+
+    // --- The render path before templates were compiled, copied from WebhookSender.sendWebhook ---
+
+    private static byte[] legacyRender(YamlConfiguration config, ConfigurationSection template, String player, String command,
+                                       String discordMention, String group, String world, int x, int y, int z) {
+        String title = template.getString("title", "");
+        String description = template.getString("description", "");
+        int color = template.getInt("color", config.getInt("embed_defaults.color", 5814783));
+        String footer = template.getString("footer", config.getString("embed_defaults.footer_text", ""));
+        boolean includeTimestamp = template.getBoolean("include_timestamp", config.getBoolean("embed_defaults.include_timestamp", true));
+        String footerIcon = config.getString("embed_defaults.footer_icon_url", "");
+
+        boolean includeMainImage = template.getBoolean("include_image", false);
+        String mainImageUrl = template.getString("image_url", "");
+
+        boolean includeThumbnail = template.getBoolean("include_thumbnail", false);
+        String thumbnailUrl = template.getString("thumbnail_url", "");
+
+        title = legacyReplace(title, player, command, discordMention, group, world, x, y, z);
+        description = legacyReplace(description, player, command, discordMention, group, world, x, y, z);
+        footer = legacyReplace(footer, player, command, discordMention, group, world, x, y, z);
+        mainImageUrl = legacyReplace(mainImageUrl, player, command, discordMention, group, world, x, y, z);
+        thumbnailUrl = legacyReplace(thumbnailUrl, player, command, discordMention, group, world, x, y, z);
+
+        String timestamp = includeTimestamp ? DateTimeFormatter.ISO_INSTANT.format(Instant.now()) : null;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"embeds\":[{")
+            .append("\"author\":{\"name\":\"").append(legacyEscape(config.getString("embed_defaults.author_name", "Command Logs"))).append("\"},")
+            .append("\"title\":\"").append(legacyEscape(title)).append("\",")
+            .append("\"description\":\"").append(legacyEscape(description)).append("\",")
+            .append("\"color\":").append(color);
+
+        if (footer != null && !footer.isEmpty()) {
+            json.append(",\"footer\":{\"text\":\"").append(legacyEscape(footer)).append("\"");
+            if (footerIcon != null && !footerIcon.isEmpty()) json.append(",\"icon_url\":\"").append(legacyEscape(footerIcon)).append("\"");
+            json.append("}");
+        }
+
+        if (includeThumbnail && thumbnailUrl != null && !thumbnailUrl.isEmpty()) {
+            json.append(",\"thumbnail\":{\"url\":\"").append(legacyEscape(thumbnailUrl)).append("\"}");
+        }
+
+        if (includeMainImage && mainImageUrl != null && !mainImageUrl.isEmpty()) {
+            json.append(",\"image\":{\"url\":\"").append(legacyEscape(mainImageUrl)).append("\"}");
+        }
+
+        if (timestamp != null) json.append(",\"timestamp\":\"").append(timestamp).append("\"");
+
+        json.append("}]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String legacyReplace(String text, String player, String command, String discordMention, String group,
+                                        String world, int x, int y, int z) {
+        if (text == null) return "";
+        return text.replace("%player%", player)
+                   .replace("%command%", command)
+                   .replace("%discord_mention%", discordMention)
+                   .replace("%group%", group)
+                   .replace("%world%", world)
+                   .replace("%x%", String.valueOf(x))
+                   .replace("%y%", String.valueOf(y))
+                   .replace("%z%", String.valueOf(z))
+                   .replace("%error%", "");
+    }
+
+    private static String legacyEscape(String text) {
+        if (text == null) return "";
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
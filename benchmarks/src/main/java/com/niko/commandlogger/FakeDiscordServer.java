@@ -0,0 +1,162 @@
+package com.niko.commandlogger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for Discord's webhook endpoint with configurable trouble: response latency,
+ * Discord-style rate limit buckets (X-RateLimit-* headers, 429 with Retry-After once a bucket
+ * is used up), random extra 429s and outage windows answered with an error status.
+ *
+ * Every accepted message is searched for "#<number>" markers; the load harness puts one in
+ * every command, so it learns exactly which commands arrived and when.
+ */
+final class FakeDiscordServer {
+
+    private static final Pattern MARKER = Pattern.compile("#(\\d+)");
+
+    private final Logger logger;
+    private final LongConsumer delivered;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final int bucketSize;
+    private final long bucketResetMillis;
+    private final double rateLimitedFraction;
+    private final long retryAfterMillis;
+    private final List<long[]> outages = new ArrayList<>(); // [from, to) in millis after start
+    private final int outageStatus;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("FakeDiscord"));
+    private HttpServer server;
+    private long startedAt;
+
+    /**
+     * One webhook's rate limit bucket, refilled completely every bucket-reset-ms.
+     */
+    private static final class Bucket {
+        int remaining;
+        long resetAt;
+    }
+
+    FakeDiscordServer(ConfigurationSection config, Logger logger, LongConsumer delivered) {
+        this.logger = logger;
+        this.delivered = delivered;
+        this.latencyMillis = Math.max(0, config.getLong("latency-ms", 80));
+        this.jitterMillis = Math.max(0, config.getLong("latency-jitter-ms", 40));
+        // Discord allows about 5 requests per 2 seconds per webhook, 0 turns the buckets off
+        this.bucketSize = Math.max(0, config.getInt("bucket-size", 5));
+        this.bucketResetMillis = Math.max(1, config.getLong("bucket-reset-ms", 2000));
+        this.rateLimitedFraction = Math.max(0, Math.min(1, config.getDouble("rate-limited-fraction", 0)));
+        this.retryAfterMillis = Math.max(0, config.getLong("retry-after-ms", 1000)); // for the random 429s
+        this.outageStatus = config.getInt("outage-status", 503);
+        for (String window : config.getStringList("outages")) {
+            // "from-to" in seconds after the start of the run
+            String[] parts = window.split("-");
+            try {
+                outages.add(new long[]{(long) (Double.parseDouble(parts[0].trim()) * 1000), (long) (Double.parseDouble(parts[1].trim()) * 1000)});
+            } catch (RuntimeException e) {
+                logger.warning("Ignoring outage window '" + window + "', expected <from>-<to> in seconds.");
+            }
+        }
+    }
+
+    void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        startedAt = System.nanoTime();
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            long latency = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+            if (latency > 0) Thread.sleep(latency);
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            for (long[] outage : outages) {
+                if (elapsed >= outage[0] && elapsed < outage[1]) {
+                    exchange.sendResponseHeaders(outageStatus, -1);
+                    return;
+                }
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            long retryAfter = takeFromBucket(exchange, path);
+            if (retryAfter < 0 && ThreadLocalRandom.current().nextDouble() < rateLimitedFraction) retryAfter = retryAfterMillis;
+            if (retryAfter >= 0) {
+                String seconds = String.format(Locale.ROOT, "%.3f", retryAfter / 1000.0);
+                byte[] answer = ("{\"message\":\"You are being rate limited.\",\"retry_after\":" + seconds + ",\"global\":false}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Retry-After", seconds);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(429, answer.length);
+                exchange.getResponseBody().write(answer);
+                return;
+            }
+
+            Matcher marker = MARKER.matcher(new String(body, StandardCharsets.UTF_8));
+            while (marker.find()) delivered.accept(Long.parseLong(marker.group(1)));
+            exchange.sendResponseHeaders(204, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.warning("Fake Discord failed to answer a request: " + e);
+        }
+    }
+
+    // Sets the X-RateLimit-* headers. Returns -1 if the request may go through, otherwise the millis until the bucket refills.
+    private long takeFromBucket(HttpExchange exchange, String path) {
+        if (bucketSize == 0) return -1;
+        Bucket bucket = buckets.computeIfAbsent(path, key -> new Bucket());
+        long now = System.currentTimeMillis();
+        boolean allowed;
+        int remaining;
+        long resetAfter;
+        synchronized (bucket) {
+            if (now >= bucket.resetAt) {
+                bucket.remaining = bucketSize;
+                bucket.resetAt = now + bucketResetMillis;
+            }
+            allowed = bucket.remaining > 0;
+            if (allowed) bucket.remaining--;
+            remaining = bucket.remaining;
+            resetAfter = bucket.resetAt - now;
+        }
+
+        exchange.getResponseHeaders().set("X-RateLimit-Bucket", Integer.toHexString(path.hashCode()));
+        exchange.getResponseHeaders().set("X-RateLimit-Limit", Integer.toString(bucketSize));
+        exchange.getResponseHeaders().set("X-RateLimit-Remaining", Integer.toString(remaining));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset", String.format(Locale.ROOT, "%.3f", (now + resetAfter) / 1000.0));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset-After", String.format(Locale.ROOT, "%.3f", resetAfter / 1000.0));
+        return allowed ? -1 : resetAfter;
+    }
+}
@@ -0,0 +1,342 @@
+package com.niko.commandlogger;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.MockPlugin;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.comphenix.protocol.ProtocolManager;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.events.PacketEvent;
+import com.comphenix.protocol.events.PacketListener;
+import com.comphenix.protocol.reflect.StructureModifier;
+import com.comphenix.protocol.wrappers.WrappedChatComponent;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the real CommandWebhookListener and webhook pipeline at a fixed rate on a MockBukkit
+ * server, against a FakeDiscordServer, and reports what a deploy would cost.
+ *
+ * Each tick (paced at 20 TPS in real time) it fires PlayerCommandPreprocessEvents, the
+ * feedback packets some of those commands get, and ordinary chat packets, then runs the
+ * scheduler so pending commands are finalized. ProtocolLib is mocked: the harness calls the
+ * listener's PacketAdapter directly with mocked packets. Every command carries a "#<n>"
+ * marker, so the fake endpoint knows which command each embed belongs to.
+ *
+ * Reported: throughput, main-thread time per command (event handler, feedback packet and the
+ * finalizing tick), and end-to-end latency from the command to Discord's 204. Limits under
+ * fail-if turn the run into a regression check (exit code 1).
+ *
+ * Usage: java -cp benchmarks.jar com.niko.commandlogger.LoadHarness [load.yml]
+ */
+public final class LoadHarness {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final String CHAT_JSON = "{\"text\":\"\",\"extra\":[{\"text\":\"[Member] \",\"color\":\"gray\"},"
+            + "{\"text\":\"Steve\"},{\"text\":\": \",\"color\":\"dark_gray\"},{\"text\":\"anyone up for the nether later?\"}]}";
+    private static final String NO_PERMISSION_JSON = "{\"text\":\"I'm sorry, but you do not have permission to perform this command.\",\"color\":\"red\"}";
+    private static final String UNKNOWN_COMMAND_JSON = "{\"translate\":\"command.unknown.command\",\"color\":\"red\"}";
+
+    private final YamlConfiguration config;
+    private final Logger logger = Logger.getLogger("CommandWebhookLogger-LoadHarness");
+
+    // Issue time per command number, written before the command enters the plugin
+    private long[] issuedAt;
+    private AtomicIntegerArray arrivals;
+    private volatile long firstMeasured = Long.MAX_VALUE;
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder measuredDelivered = new LongAdder();
+
+    // Main thread only, after the warmup
+    private final LatencyHistogram commandTime = new LatencyHistogram();
+    private final LatencyHistogram chatTime = new LatencyHistogram();
+    private final LatencyHistogram tickTime = new LatencyHistogram();
+
+    LoadHarness(YamlConfiguration config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File configFile = new File(args.length > 0 ? args[0] : "load.yml");
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(configFile);
+        if (!configFile.isFile()) System.out.println(configFile + " not found, running with the built-in defaults.");
+        System.exit(new LoadHarness(config).run() ? 0 : 1);
+    }
+
+    // Returns false if a fail-if limit was exceeded
+    boolean run() throws Exception {
+        ConfigurationSection load = section("load");
+        int players = Math.max(1, load.getInt("players", 50));
+        double commandsPerSecond = Math.max(0, load.getDouble("commands-per-second", 20));
+        double chatPerSecond = Math.max(0, load.getDouble("chat-packets-per-second", 200));
+        double noPermissionFeedback = load.getDouble("feedback.no-permission", 0.1);
+        double unknownFeedback = load.getDouble("feedback.unknown-command", 0.1);
+        int warmupTicks = (int) (Math.max(0, load.getDouble("warmup-seconds", 10)) * 20);
+        int measuredTicks = (int) (Math.max(1, load.getDouble("duration-seconds", 60)) * 20);
+        long drainNanos = TimeUnit.SECONDS.toNanos(Math.max(0, load.getLong("drain-timeout-seconds", 30)));
+        List<String> commandLines = load.getStringList("commands");
+        if (commandLines.isEmpty()) commandLines = List.of("spawn", "home", "msg Bench1 hi there", "warp shop", "nosuchcommand");
+
+        int capacity = (int) Math.ceil(commandsPerSecond / 20) * (warmupTicks + measuredTicks) + 1;
+        issuedAt = new long[capacity];
+        arrivals = new AtomicIntegerArray(capacity);
+
+        FakeDiscordServer discord = new FakeDiscordServer(section("fake-discord"), logger, this::delivered);
+        discord.start(section("fake-discord").getInt("port", 0));
+
+        // The thread calling mock() is the server's main thread
+        ServerMock server = MockBukkit.mock();
+        ExecutorService workers = Executors.newFixedThreadPool(2, new DaemonThreadFactory("Worker"));
+        WebhookSender sender = null;
+        try {
+            MockPlugin plugin = MockBukkit.createMockPlugin("CommandWebhookLogger");
+            configurePlugin(plugin, discord.port());
+            plugin.getLogger().setLevel(Level.parse(load.getString("plugin-log-level", "SEVERE").toUpperCase(Locale.ROOT)));
+            registerCommands(server, load.getStringList("registered"));
+
+            // Wired like Main.onEnable
+            PlayerContextCache contextCache = new PlayerContextCache(plugin, workers);
+            sender = new WebhookSender(plugin, contextCache, workers);
+            ProtocolManager protocolManager = mock(ProtocolManager.class);
+            CommandWebhookListener listener = new CommandWebhookListener(plugin, protocolManager,
+                    List.of(new AggregationStage(plugin, sender)));
+            server.getPluginManager().registerEvents(listener, plugin);
+            ArgumentCaptor<PacketListener> captured = ArgumentCaptor.forClass(PacketListener.class);
+            verify(protocolManager, atLeastOnce()).addPacketListener(captured.capture());
+            PacketListener packetListener = captured.getValue();
+
+            List<PlayerMock> playerList = new ArrayList<>();
+            List<PacketEvent> chatEvents = new ArrayList<>();
+            List<PacketEvent> noPermissionEvents = new ArrayList<>();
+            List<PacketEvent> unknownEvents = new ArrayList<>();
+            PacketContainer chat = chatPacket(CHAT_JSON);
+            PacketContainer noPermission = chatPacket(NO_PERMISSION_JSON);
+            PacketContainer unknown = chatPacket(UNKNOWN_COMMAND_JSON);
+            for (int i = 0; i < players; i++) {
+                PlayerMock player = server.addPlayer("Bench" + i);
+                playerList.add(player);
+                chatEvents.add(packetEvent(player, chat));
+                noPermissionEvents.add(packetEvent(player, noPermission));
+                unknownEvents.add(packetEvent(player, unknown));
+            }
+
+            System.out.printf(Locale.ROOT, "Running %d players, %.0f commands/s and %.0f chat packets/s for %ds after a %ds warmup.%n",
+                    players, commandsPerSecond, chatPerSecond, measuredTicks / 20, warmupTicks / 20);
+
+            // --- Load ---
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long sequence = 0;
+            long measuredCommands = 0;
+            double commandCredit = 0;
+            double chatCredit = 0;
+            long start = System.nanoTime();
+            long nextTick = start;
+            for (int tick = 0; tick < warmupTicks + measuredTicks; tick++) {
+                boolean measuring = tick >= warmupTicks;
+                if (tick == warmupTicks) firstMeasured = sequence;
+
+                commandCredit += commandsPerSecond / 20;
+                for (; commandCredit >= 1 && sequence < capacity; commandCredit--, sequence++) {
+                    int index = (int) (sequence % players);
+                    String line = "/" + commandLines.get((int) (sequence % commandLines.size())) + " #" + sequence;
+                    issuedAt[(int) sequence] = System.nanoTime();
+
+                    long begin = System.nanoTime();
+                    server.getPluginManager().callEvent(new PlayerCommandPreprocessEvent(playerList.get(index), line));
+                    // Feedback is sent while the command runs, on the main thread
+                    double roll = random.nextDouble();
+                    if (roll < noPermissionFeedback) {
+                        packetListener.onPacketSending(noPermissionEvents.get(index));
+                    } else if (roll < noPermissionFeedback + unknownFeedback) {
+                        packetListener.onPacketSending(unknownEvents.get(index));
+                    }
+                    if (measuring) {
+                        commandTime.record(System.nanoTime() - begin);
+                        measuredCommands++;
+                    }
+                }
+
+                chatCredit += chatPerSecond / 20;
+                for (; chatCredit >= 1; chatCredit--) {
+                    long begin = System.nanoTime();
+                    packetListener.onPacketSending(chatEvents.get(random.nextInt(players)));
+                    if (measuring) chatTime.record(System.nanoTime() - begin);
+                }
+
+                long begin = System.nanoTime();
+                server.getScheduler().performOneTick();
+                if (measuring) tickTime.record(System.nanoTime() - begin);
+
+                nextTick += TICK_NANOS;
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+            long loadNanos = System.nanoTime() - start - (long) warmupTicks * TICK_NANOS;
+
+            // --- Drain: keep ticking until everything measured arrived or the timeout passed ---
+            long drainStart = System.nanoTime();
+            while (measuredDelivered.sum() < measuredCommands && System.nanoTime() - drainStart < drainNanos) {
+                server.getScheduler().performOneTick();
+                LockSupport.parkNanos(TICK_NANOS);
+            }
+
+            return report(measuredCommands, loadNanos);
+        } finally {
+            if (sender != null) sender.shutdown();
+            MockBukkit.unmock();
+            discord.stop();
+            workers.shutdownNow();
+        }
+    }
+
+    // Called on the fake endpoint's threads for every "#<n>" it received
+    private void delivered(long sequence) {
+        if (sequence < 0 || sequence >= issuedAt.length) return;
+        if (arrivals.getAndIncrement((int) sequence) > 0) {
+            duplicates.increment();
+            return;
+        }
+        if (sequence >= firstMeasured) {
+            deliveryLatency.record(System.nanoTime() - issuedAt[(int) sequence]);
+            measuredDelivered.increment();
+        }
+    }
+
+    private boolean report(long commands, long loadNanos) {
+        double seconds = loadNanos / 1e9;
+        long delivered = measuredDelivered.sum();
+        double deliveredPercent = commands == 0 ? 100 : 100.0 * delivered / commands;
+        // Finalizing happens in the tick, spread it over the commands it finalized
+        double tickPerCommand = commands == 0 ? 0 : (double) tickTime.getSumNanos() / commands;
+        double mainPerCommand = commandTime.getMeanNanos() + tickPerCommand;
+        double mainPercent = 100.0 * (commandTime.getSumNanos() + chatTime.getSumNanos() + tickTime.getSumNanos())
+                / Math.max(1, tickTime.getCount() * TICK_NANOS);
+
+        System.out.println();
+        System.out.println("=== CommandWebhookLogger load test ===");
+        System.out.printf(Locale.ROOT, "Throughput:    %d commands in %.1fs (%.1f/s), %d delivered (%.1f%%, %.1f/s), %d lost, %d duplicates%n",
+                commands, seconds, commands / seconds, delivered, deliveredPercent, delivered / seconds,
+                commands - delivered, duplicates.sum());
+        System.out.println("Main thread:   command " + describe(commandTime) + " | chat packet " + describe(chatTime)
+                + " | tick " + describe(tickTime));
+        System.out.printf(Locale.ROOT, "               %s per command including its share of the tick, %.2f%% of the 50ms tick budget%n",
+                format((long) mainPerCommand), mainPercent);
+        System.out.println("Delivery:      " + describe(deliveryLatency) + " (command to 204)");
+        System.out.println();
+        System.out.println("Plugin metrics (whole run, warmup included):");
+        for (String line : PluginMetrics.describe()) System.out.println("  " + line.replaceAll("§.", ""));
+
+        boolean passed = true;
+        ConfigurationSection limits = config.getConfigurationSection("fail-if");
+        if (limits != null) {
+            passed &= check(limits, "main-thread-p99-us", commandTime.getPercentileNanos(99) / 1000.0, true);
+            passed &= check(limits, "main-thread-per-command-us", mainPerCommand / 1000.0, true);
+            passed &= check(limits, "delivery-p99-ms", deliveryLatency.getPercentileNanos(99) / 1e6, true);
+            passed &= check(limits, "delivered-percent-below", deliveredPercent, false);
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        return passed;
+    }
+
+    private static boolean check(ConfigurationSection limits, String key, double value, boolean upperLimit) {
+        if (!limits.isSet(key)) return true;
+        double limit = limits.getDouble(key);
+        boolean failed = upperLimit ? value > limit : value < limit;
+        if (failed) System.out.printf(Locale.ROOT, "Limit %s: %.2f, measured %.2f%n", key, limit, value);
+        return !failed;
+    }
+
+    // The plugin's config.yml, the plugin section of load.yml on top, and every webhook pointed at the fake endpoint
+    private void configurePlugin(MockPlugin plugin, int port) {
+        plugin.getConfig().setDefaults(BenchmarkConfig.defaults());
+        ConfigurationSection overrides = config.getConfigurationSection("plugin");
+        if (overrides != null) {
+            for (Map.Entry<String, Object> entry : overrides.getValues(true).entrySet()) {
+                if (!(entry.getValue() instanceof ConfigurationSection)) plugin.getConfig().set(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String resultKey : List.of("executed", "no-permission", "unknown-command")) {
+            plugin.getConfig().set("webhooks." + resultKey, "http://127.0.0.1:" + port + "/api/webhooks/" + resultKey);
+        }
+    }
+
+    // "label" or "label permission", the permission is not granted to the bench players
+    private static void registerCommands(ServerMock server, List<String> registered) {
+        if (registered.isEmpty()) registered = List.of("spawn", "home", "msg", "warp bench.warp");
+        for (String entry : registered) {
+            String[] parts = entry.trim().split("\\s+");
+            Command command = new Command(parts[0]) {
+                @Override
+                public boolean execute(CommandSender sender, String label, String[] args) {
+                    return true;
+                }
+            };
+            if (parts.length > 1) command.setPermission(parts[1]);
+            server.getCommandMap().register("bench", command);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PacketContainer chatPacket(String json) {
+        WrappedChatComponent component = mock(WrappedChatComponent.class);
+        when(component.getJson()).thenReturn(json);
+        StructureModifier<WrappedChatComponent> components = mock(StructureModifier.class);
+        when(components.readSafely(anyInt())).thenReturn(component);
+        StructureModifier<String> strings = mock(StructureModifier.class);
+        PacketContainer packet = mock(PacketContainer.class);
+        when(packet.getChatComponents()).thenReturn(components);
+        when(packet.getStrings()).thenReturn(strings);
+        return packet;
+    }
+
+    private static PacketEvent packetEvent(Player player, PacketContainer packet) {
+        PacketEvent event = mock(PacketEvent.class);
+        when(event.getPlayer()).thenReturn(player);
+        when(event.getPacket()).thenReturn(packet);
+        return event;
+    }
+
+    private ConfigurationSection section(String path) {
+        ConfigurationSection section = config.getConfigurationSection(path);
+        return section != null ? section : config.createSection(path);
+    }
+
+    private static String describe(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) return "no samples";
+        return "p50=" + format(histogram.getPercentileNanos(50)) + " p90=" + format(histogram.getPercentileNanos(90))
+                + " p99=" + format(histogram.getPercentileNanos(99)) + " max=" + format(histogram.getMaxNanos());
+    }
+
+    private static String format(long nanos) {
+        if (nanos < 10_000) return nanos + "ns";
+        if (nanos < 10_000_000) return (nanos / 1_000) + "µs";
+        return (nanos / 1_000_000) + "ms";
+    }
+}
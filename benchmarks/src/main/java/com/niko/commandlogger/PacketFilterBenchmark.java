@@ -0,0 +1,90 @@
+package com.niko.commandlogger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first thing the packet listener does for every outbound chat packet: find out whether
+ * its player has a command in flight. filtered checks ArmedPlayers first, unfiltered is the
+ * old path straight to the map of command rings. Chat is broadcast, so the packets rotate
+ * over all online players, on as many threads as a server has netty workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PacketFilterBenchmark {
+
+    @Param({"100", "1000"})
+    public int players;
+
+    // Players with a command in flight while the packets are sent
+    @Param({"0", "5"})
+    public int pending;
+
+    private UUID[] ids;
+    private final ArmedPlayers armed = new ArmedPlayers();
+    private final Map<UUID, CommandRing> pendingCommands = new ConcurrentHashMap<>();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ids = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            // Players keep their (then empty) ring until they quit
+            pendingCommands.put(ids[i], new CommandRing());
+        }
+        for (int i = 0; i < pending; i++) {
+            UUID id = ids[random.nextInt(players)];
+            CommandRing ring = pendingCommands.get(id);
+            ring.add(new PendingCommand(null, "/spawn", ring.nextSequence(), "spawn", 0));
+            armed.arm(id);
+        }
+    }
+
+    private UUID nextPlayer(Cursor cursor) {
+        int index = cursor.next;
+        cursor.next = index + 1 == ids.length ? 0 : index + 1;
+        return ids[index];
+    }
+
+    @Benchmark
+    public PendingCommand filtered(Cursor cursor) {
+        UUID player = nextPlayer(cursor);
+        if (!armed.mayBeArmed(player)) return null;
+        CommandRing ring = pendingCommands.get(player);
+        return ring == null ? null : ring.oldestPending();
+    }
+
+    @Benchmark
+    public PendingCommand unfiltered(Cursor cursor) {
+        UUID player = nextPlayer(cursor);
+        CommandRing ring = pendingCommands.get(player);
+        return ring == null ? null : ring.oldestPending();
+    }
+}
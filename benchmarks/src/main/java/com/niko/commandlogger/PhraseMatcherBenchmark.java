@@ -0,0 +1,72 @@
+package com.niko.commandlogger;
+
+import org.bukkit.ChatColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword classification of feedback messages with the shipped feedback-phrases. A miss
+ * (ordinary chat) has to read the whole message and is the common case. legacyMatch is the
+ * old classification: stripColor, toLowerCase and a chain of contains() over hard-coded phrases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhraseMatcherBenchmark {
+
+    @Param({"no-permission", "unknown-command", "colored", "miss", "long-miss"})
+    public String message;
+
+    private String text;
+    private PhraseMatcher matcher;
+
+    @Setup
+    public void setup() {
+        text = switch (message) {
+            case "no-permission" -> "I'm sorry, but you do not have permission to perform this command.";
+            case "unknown-command" -> "Unknown or incomplete command, see below for error";
+            case "colored" -> "§c§lError: §r§cYou §cdon't §chave §cpermission§7.";
+            case "miss" -> "anyone up for the nether later? bring food";
+            case "long-miss" -> "Welcome back! ".repeat(40);
+            default -> throw new IllegalArgumentException(message);
+        };
+        matcher = PhraseMatcher.fromConfig(BenchmarkConfig.defaults().getConfigurationSection("feedback-phrases"),
+                "no-permission", "unknown-command");
+    }
+
+    @Benchmark
+    public int match() {
+        return matcher.match(text);
+    }
+
+    @Benchmark
+    public int legacyMatch() {
+        String lowerCaseMessage = ChatColor.stripColor(text).toLowerCase();
+        if (lowerCaseMessage.contains("no permission") ||
+            lowerCaseMessage.contains("you do not have permission") ||
+            lowerCaseMessage.contains("you do not have access") ||
+            lowerCaseMessage.contains("denied") ||
+            lowerCaseMessage.contains("missing permission") ||
+            lowerCaseMessage.contains("you don't have permission") ||
+            lowerCaseMessage.contains("i'm sorry, but you do not have permission")) {
+            return 0;
+        } else if (lowerCaseMessage.contains("unknown command")) {
+            return 1;
+        }
+        return PhraseMatcher.NO_MATCH;
+    }
+}
@@ -0,0 +1,184 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Routing a command through hundreds of rules. The cost should stay flat as rules are added:
+ * one trie walk and a few bitset ANDs, whichever rule ends up deciding. The "linear" engine
+ * is the straightforward alternative for comparison: the same rules checked one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingRulesBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int rules;
+
+    @Param({"trie", "linear"})
+    public String engine;
+
+    private interface Router {
+        void route(CommandEvent event, String group, RoutingRules.TargetConsumer targets);
+    }
+
+    private Router routing;
+    private CommandEvent first;
+    private CommandEvent last;
+    private CommandEvent prefix;
+    private CommandEvent unmatched;
+
+    @Setup
+    public void setup() {
+        YamlConfiguration config = BenchmarkConfig.defaults();
+        Map<String, String> webhookUrls = new HashMap<>();
+        for (String resultKey : List.of("executed", "no-permission", "unknown-command")) {
+            webhookUrls.put(resultKey, "http://127.0.0.1/api/webhooks/" + resultKey);
+        }
+
+        // Every rule names a few labels and a prefix and restricts one other dimension, like a big real config
+        List<Map<String, Object>> ruleList = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            Map<String, Object> rule = new HashMap<>();
+            rule.put("name", "rule-" + i);
+            rule.put("commands", List.of("cmd" + i, "alias" + i, "/prefix" + i + "*"));
+            switch (i % 3) {
+                case 0 -> rule.put("results", List.of("executed"));
+                case 1 -> rule.put("worlds", List.of("world", "world_nether"));
+                default -> rule.put("groups", List.of("admin", "mod"));
+            }
+            rule.put("webhook", "http://127.0.0.1/api/webhooks/rule-" + i);
+            ruleList.add(rule);
+        }
+        config.set("rules", ruleList);
+        Map<String, EmbedTemplate> templates = EmbedTemplate.compileAll(config);
+        routing = switch (engine) {
+            case "trie" -> RoutingRules.compile(config, webhookUrls, templates, Logger.getLogger("RoutingRulesBenchmark"))::route;
+            case "linear" -> new LinearRules(ruleList, webhookUrls, templates)::route;
+            default -> throw new IllegalArgumentException(engine);
+        };
+
+        first = event("/cmd0 Steve");
+        last = event("/minecraft:cmd" + (rules - 1) + " Steve");
+        prefix = event("/prefix" + (rules / 2) + "something");
+        unmatched = event("/spawn");
+    }
+
+    private static CommandEvent event(String command) {
+        return new CommandEvent(CommandSource.PLAYER, UUID.randomUUID(), "Steve", command, "executed", "world", 12, 64, -340, 0L);
+    }
+
+    @Benchmark
+    public void firstRule(Blackhole blackhole) {
+        routing.route(first, "admin", (url, template) -> blackhole.consume(url));
+    }
+
+    @Benchmark
+    public void lastRule(Blackhole blackhole) {
+        routing.route(last, "admin", (url, template) -> blackhole.consume(url));
+    }
+
+    @Benchmark
+    public void prefixRule(Blackhole blackhole) {
+        routing.route(prefix, "admin", (url, template) -> blackhole.consume(url));
+    }
+
+    @Benchmark
+    public void noRule(Blackhole blackhole) {
+        routing.route(unmatched, "admin", (url, template) -> blackhole.consume(url));
+    }
+
+    /**
+     * Every rule checked in order: label against its patterns, then results, worlds and groups.
+     */
+    private static final class LinearRules {
+        private final List<LinearRule> rules = new ArrayList<>();
+        private final Map<String, String> defaultUrls;
+        private final Map<String, EmbedTemplate> templates;
+
+        private static final class LinearRule {
+            final Set<String> labels = new HashSet<>();
+            final List<String> prefixes = new ArrayList<>();
+            Set<String> results;
+            Set<String> worlds;
+            Set<String> groups;
+            String webhookUrl;
+        }
+
+        @SuppressWarnings("unchecked")
+        LinearRules(List<Map<String, Object>> config, Map<String, String> defaultUrls, Map<String, EmbedTemplate> templates) {
+            this.defaultUrls = defaultUrls;
+            this.templates = templates;
+            for (Map<String, Object> entry : config) {
+                LinearRule rule = new LinearRule();
+                for (String pattern : (List<String>) entry.get("commands")) {
+                    String normalized = pattern.startsWith("/") ? pattern.substring(1) : pattern;
+                    if (normalized.endsWith("*")) rule.prefixes.add(normalized.substring(0, normalized.length() - 1));
+                    else rule.labels.add(normalized);
+                }
+                if (entry.containsKey("results")) rule.results = new HashSet<>((List<String>) entry.get("results"));
+                if (entry.containsKey("worlds")) rule.worlds = new HashSet<>((List<String>) entry.get("worlds"));
+                if (entry.containsKey("groups")) rule.groups = new HashSet<>((List<String>) entry.get("groups"));
+                rule.webhookUrl = (String) entry.get("webhook");
+                rules.add(rule);
+            }
+        }
+
+        void route(CommandEvent event, String group, RoutingRules.TargetConsumer targets) {
+            String command = event.command;
+            int start = command.startsWith("/") ? 1 : 0;
+            int end = command.indexOf(' ');
+            if (end < 0) end = command.length();
+            int colon = command.lastIndexOf(':', end - 1);
+            if (colon >= start) start = colon + 1;
+            String label = command.substring(start, end).toLowerCase(Locale.ROOT);
+            String groupKey = group != null ? group.toLowerCase(Locale.ROOT) : null;
+
+            for (LinearRule rule : rules) {
+                if (!matchesLabel(rule, label)) continue;
+                if (rule.results != null && !rule.results.contains(event.resultKey)) continue;
+                if (rule.worlds != null && !rule.worlds.contains(event.world)) continue;
+                if (rule.groups != null && !rule.groups.contains(groupKey)) continue;
+                targets.accept(rule.webhookUrl, templates.get(event.resultKey));
+                return;
+            }
+            String url = defaultUrls.get(event.resultKey);
+            EmbedTemplate template = templates.get(event.resultKey);
+            if (url != null && template != null) targets.accept(url, template);
+        }
+
+        private static boolean matchesLabel(LinearRule rule, String label) {
+            if (rule.labels.contains(label)) return true;
+            for (String prefix : rule.prefixes) {
+                if (label.startsWith(prefix)) return true;
+            }
+            return false;
+        }
+    }
+}
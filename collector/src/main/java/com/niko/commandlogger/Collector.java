@@ -0,0 +1,295 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Standalone collector for servers with forwarding enabled.
+ *
+ * Servers connect over TCP or a Unix domain socket and stream their commands (see
+ * ForwardingCodec). Frames are resent after a reconnect, so every server run remembers the
+ * highest sequence number handed to delivery and skips anything older. A run that has had
+ * no connection for session-idle-minutes is forgotten (its server restarted under a new
+ * session id long ago), so a network of restarting servers does not grow the map forever.
+ * Sequence numbers only keep resent frames from being delivered twice. Repeated commands are
+ * collapsed by an AggregationStage on the merged stream, so a player spamming a command on
+ * several servers (or across a server switch) gets one set of embeds and one summary per
+ * window, not one per server. New commands are then rendered, routed and delivered with the
+ * plugin's own templates, rules, spool and dispatcher: one queue per webhook and one view of
+ * Discord's rate limits for the whole network.
+ *
+ * Usage: java -jar CommandWebhookLogger-Collector-1.0.jar [collector.yml] [--stub-webhook port]
+ */
+public final class Collector {
+
+    private static final int MAX_CONTEXTS = 10_000;
+
+    private final Logger logger = Logger.getLogger("CommandWebhookLogger-Collector");
+    private final YamlConfiguration config;
+    private final RoutingRules routing;
+    private final WebhookSpool spool;
+    private final WebhookDispatcher dispatcher;
+    // Guarded by itself, like the main thread guards the plugin's stage
+    private final AggregationStage aggregation;
+    // Discord link and group of recently seen players, for summaries and commands let through by aggregation
+    private final Map<UUID, ForwardingCodec.ForwardedEvent> contexts = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, ForwardingCodec.ForwardedEvent> eldest) {
+            return size() > MAX_CONTEXTS;
+        }
+    };
+    private final ScheduledExecutorService windowTimer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Aggregation"));
+    private final ThreadFactory connectionThreads = new DaemonThreadFactory("Connection");
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long sessionIdleMillis;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private volatile ServerSocketChannel server;
+
+    /**
+     * One run of one server (name and session id). A reconnect continues the same session.
+     */
+    private static final class Session {
+        // All guarded by this
+        long delivered = -1;
+        int connections;
+        long lastActiveMillis;
+
+        synchronized boolean isIdle(long now, long idleMillis) {
+            return connections == 0 && now - lastActiveMillis >= idleMillis;
+        }
+
+        synchronized void disconnected() {
+            connections--;
+            lastActiveMillis = System.currentTimeMillis();
+        }
+    }
+
+    Collector(YamlConfiguration config, File dataFolder) {
+        this.config = config;
+        this.sessionIdleMillis = Math.max(1, config.getLong("session-idle-minutes", 60)) * 60_000;
+        Map<String, EmbedTemplate> templates = EmbedTemplate.compileAll(config);
+        this.routing = RoutingRules.compile(config, WebhookSender.webhookUrls(config), templates, logger);
+        this.spool = new WebhookSpool(new File(dataFolder, "spool"), logger);
+        spool.configure(config.getConfigurationSection("spool"));
+        this.dispatcher = new WebhookDispatcher(logger, spool);
+        dispatcher.configure(config);
+        this.aggregation = new AggregationStage(() -> config.getConfigurationSection("aggregation"), new Delivery());
+        windowTimer.scheduleWithFixedDelay(() -> {
+            synchronized (aggregation) {
+                aggregation.expireWindows();
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+
+        // Resend whatever was still undelivered when the collector last stopped
+        spool.replay(dispatcher::enqueueReplayed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File configFile = new File("collector.yml");
+        int stubPort = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--stub-webhook") && i + 1 < args.length) {
+                stubPort = Integer.parseInt(args[++i]);
+            } else {
+                configFile = new File(args[i]);
+            }
+        }
+
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(configFile);
+        // The plugin's config.yml (part of the jar) provides every default, collector.yml only needs what differs
+        try (InputStream defaults = Collector.class.getResourceAsStream("/config.yml")) {
+            if (defaults != null) {
+                config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
+                config.options().copyDefaults(true);
+            }
+        }
+
+        Collector collector = new Collector(config, configFile.getAbsoluteFile().getParentFile());
+        if (stubPort >= 0) StubWebhookServer.start(stubPort, collector.logger);
+        Runtime.getRuntime().addShutdownHook(new Thread(collector::stop, "CommandWebhookLogger-Shutdown"));
+        collector.run(config.getString("listen", "127.0.0.1:25590"));
+    }
+
+    // Accepts connections until stop() closes the server socket
+    void run(String address) throws IOException {
+        SocketAddress local = ForwardingCodec.parseAddress(address);
+        if (local instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath()); // left over from an earlier run
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(local);
+        logger.info("Listening for servers on " + address + ".");
+
+        while (server.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            connections.add(channel);
+            connectionThreads.newThread(() -> serve(channel)).start();
+        }
+    }
+
+    void stop() {
+        closeQuietly(server);
+        for (SocketChannel channel : connections) closeQuietly(channel);
+        windowTimer.shutdownNow();
+        synchronized (aggregation) {
+            aggregation.flush(); // the summaries of open windows
+        }
+        dispatcher.shutdown(config.getLong("delivery.shutdown-timeout-ms", 5000));
+        spool.close();
+    }
+
+    private void serve(SocketChannel channel) {
+        String remote = describe(channel);
+        Session session = null;
+        ForwardingCodec.FrameReader frames = new ForwardingCodec.FrameReader(ForwardingCodec.inputStream(channel));
+        ForwardingCodec.FrameWriter ack = new ForwardingCodec.FrameWriter(ForwardingCodec.ACK);
+        try {
+            if (frames.next() != ForwardingCodec.HELLO || frames.readFixedInt() != ForwardingCodec.MAGIC) {
+                throw new IOException("not a CommandWebhookLogger server");
+            }
+            int version = frames.readByte();
+            if (version != ForwardingCodec.VERSION) throw new IOException("unsupported protocol version " + version);
+            String serverName = frames.readString();
+            long sessionId = frames.readFixedLong();
+            session = connect(serverName + "/" + Long.toHexString(sessionId));
+            logger.info(serverName + " connected from " + remote + ".");
+
+            int type;
+            while ((type = frames.next()) >= 0) {
+                if (type != ForwardingCodec.EVENTS) continue;
+                long first = frames.readFixedLong();
+                long last = first + frames.readVarLong() - 1;
+                synchronized (session) {
+                    for (long sequence = first; sequence <= last; sequence++) {
+                        ForwardingCodec.ForwardedEvent event = frames.readEvent();
+                        if (sequence <= session.delivered) continue; // resent after a reconnect
+                        receive(event);
+                        session.delivered = sequence;
+                    }
+                }
+                // Everything up to here is in the spool, the server may forget it
+                ForwardingCodec.writeAck(ack, last);
+                ack.writeTo(channel);
+            }
+            logger.info(serverName + " disconnected.");
+        } catch (IOException e) {
+            if (server.isOpen()) logger.warning("Connection from " + remote + " failed: " + e.getMessage());
+        } finally {
+            if (session != null) session.disconnected();
+            connections.remove(channel);
+            closeQuietly(channel);
+        }
+    }
+
+    // The session of a connecting server, counted as connected until disconnected()
+    private Session connect(String key) {
+        evictIdleSessions();
+        return sessions.compute(key, (k, session) -> {
+            if (session == null) session = new Session();
+            synchronized (session) {
+                session.connections++;
+            }
+            return session;
+        });
+    }
+
+    // Checked in compute, so a server connecting at the same moment either keeps its session or gets a new one
+    private void evictIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (String key : sessions.keySet()) {
+            sessions.computeIfPresent(key, (k, session) -> session.isIdle(now, sessionIdleMillis) ? null : session);
+        }
+    }
+
+    int sessionCount() {
+        return sessions.size();
+    }
+
+    private void receive(ForwardingCodec.ForwardedEvent forwarded) {
+        synchronized (aggregation) {
+            contexts.put(forwarded.event.playerId, forwarded);
+            aggregation.accept(forwarded.event);
+        }
+    }
+
+    /**
+     * What aggregation lets through, delivered like WebhookSender.sendWebhook with the player
+     * context the server sent along. Called under the aggregation lock.
+     */
+    private final class Delivery implements CommandSink {
+        @Override
+        public boolean wants(String resultKey) {
+            return true;
+        }
+
+        @Override
+        public void accept(CommandEvent event) {
+            ForwardingCodec.ForwardedEvent context = contexts.get(event.playerId);
+            String discordMention = context != null ? context.discordMention : null;
+            String group = context != null ? context.group : null;
+            TemplateValues values = new TemplateValues(event.source.key, event.playerName, event.command, discordMention,
+                    group, event.world, event.x, event.y, event.z, event.count,
+                    event.isSummary() ? WebhookSender.formatWindow(event.windowMillis) : null);
+            routing.route(event, group, (webhookUrl, template) -> {
+                JsonWriter json = JsonWriter.local();
+                int characters = template.render(json, values);
+                dispatcher.enqueue(webhookUrl, json.toByteArray(), characters, event.resultKey);
+            });
+        }
+
+        @Override
+        public void reload() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    private static String describe(SocketChannel channel) {
+        try {
+            SocketAddress remote = channel.getRemoteAddress();
+            return remote == null || remote instanceof UnixDomainSocketAddress ? "a local socket" : remote.toString();
+        } catch (IOException e) {
+            return "an unknown address";
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
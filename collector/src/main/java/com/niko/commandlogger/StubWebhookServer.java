@@ -0,0 +1,33 @@
+package com.niko.commandlogger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Stand-in for Discord's webhook endpoint, for trying the collector end to end on localhost:
+ * answers every POST with 204 and logs the message it received. Point the webhooks at
+ * http://127.0.0.1:<port>/<anything>.
+ */
+final class StubWebhookServer {
+
+    private StubWebhookServer() {
+    }
+
+    static void start(int port, Logger logger) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            logger.info("Stub webhook " + exchange.getRequestURI().getPath() + " received: " + body);
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newSingleThreadExecutor(new DaemonThreadFactory("StubWebhook")));
+        server.start();
+        logger.info("Stub webhook server listening on http://127.0.0.1:" + port + "/");
+    }
+}
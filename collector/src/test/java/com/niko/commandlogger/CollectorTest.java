@@ -0,0 +1,276 @@
+package com.niko.commandlogger;
+
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ForwardingSinks talking to a Collector on loopback, with a stand-in for Discord behind the
+ * collector and, where resends are tested, a proxy in between that can swallow the acks.
+ */
+class CollectorTest {
+
+    @TempDir
+    File dataFolder;
+
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private HttpServer discord;
+    private AckDroppingProxy proxy;
+    private Collector collector;
+    private ForwardingSink sink;
+    private ForwardingSink otherSink;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (sink != null) sink.shutdown();
+        if (otherSink != null) otherSink.shutdown();
+        if (collector != null) collector.stop();
+        if (proxy != null) proxy.close();
+        if (discord != null) discord.stop(0);
+    }
+
+    // Starts the stand-in for Discord and a collector in front of it, returns the collector's port
+    private int startCollector(YamlConfiguration config) throws IOException {
+        discord = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        discord.createContext("/", exchange -> {
+            messages.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        discord.start();
+        config.set("webhooks.executed", "http://127.0.0.1:" + discord.getAddress().getPort() + "/executed");
+
+        int collectorPort = freePort();
+        collector = new Collector(config, dataFolder);
+        Thread listener = new Thread(() -> {
+            try {
+                collector.run("127.0.0.1:" + collectorPort);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "CollectorTest-Listener");
+        listener.setDaemon(true);
+        listener.start();
+        return collectorPort;
+    }
+
+    @Test
+    void forwardsEveryCommandOnceAcrossReconnects() throws Exception {
+        YamlConfiguration config = collectorConfig();
+        config.set("aggregation.enabled", false); // every command is expected one by one
+        int collectorPort = startCollector(config);
+
+        // Until told otherwise the collector's acks never reach the sink, so it has to resend everything
+        proxy = new AckDroppingProxy(collectorPort);
+        sink = new ForwardingSink(plugin("127.0.0.1:" + proxy.port(), "test"), null);
+
+        for (int i = 1; i <= 5; i++) sink.accept(command(i));
+        awaitDelivered(5);
+
+        proxy.deliverAcks();
+        proxy.disconnectAll();
+        for (int i = 6; i <= 7; i++) sink.accept(command(i));
+        // The resent frames reach the collector before these on the same connection
+        awaitDelivered(7);
+
+        for (int i = 1; i <= 7; i++) {
+            assertEquals(1, occurrences(marker(i)), "delivered count of command " + i);
+        }
+        assertEquals(1, collector.sessionCount());
+        assertTrue(proxy.connections() >= 2, "the sink reconnected");
+    }
+
+    @Test
+    void collapsesRepeatedCommandsOfAllServers() throws Exception {
+        YamlConfiguration config = collectorConfig();
+        config.set("aggregation.window-seconds", 2);
+        config.set("aggregation.thresholds.executed", 2);
+        int collectorPort = startCollector(config);
+        sink = new ForwardingSink(plugin("127.0.0.1:" + collectorPort, "lobby"), null);
+        otherSink = new ForwardingSink(plugin("127.0.0.1:" + collectorPort, "survival"), null);
+
+        CommandEvent spam = command(1);
+        for (int i = 0; i < 3; i++) sink.accept(spam);
+        await(() -> occurrences(marker(1)) >= 2);
+        // The other server collapsed ten of them itself already
+        otherSink.accept(spam.summarize(10, 1500));
+
+        // Two one by one, then a single summary for the whole network
+        await(() -> messages.stream().anyMatch(message -> message.contains("x13 in")));
+        assertEquals(3, occurrences(marker(1)));
+    }
+
+    private static CommandEvent command(int i) {
+        return new CommandEvent(CommandSource.CONSOLE, CommandSource.CONSOLE.syntheticId, "CONSOLE", "say " + marker(i),
+                "executed", null, 0, 0, 0, System.currentTimeMillis());
+    }
+
+    private static String marker(int i) {
+        return "event-" + i + "-end";
+    }
+
+    private int occurrences(String marker) {
+        int count = 0;
+        for (String message : messages) {
+            for (int at = message.indexOf(marker); at >= 0; at = message.indexOf(marker, at + 1)) count++;
+        }
+        return count;
+    }
+
+    private void awaitDelivered(int events) throws InterruptedException {
+        await(() -> {
+            for (int i = 1; i <= events; i++) {
+                if (occurrences(marker(i)) == 0) return false;
+            }
+            return true;
+        });
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 15_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("timed out");
+            Thread.sleep(20);
+        }
+    }
+
+    private static YamlConfiguration collectorConfig() throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        try (InputStream defaults = Collector.class.getResourceAsStream("/config.yml")) {
+            config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
+        }
+        config.set("delivery.linger-ms", 0);
+        return config;
+    }
+
+    private static JavaPlugin plugin(String collectorAddress, String serverName) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("forwarding.address", collectorAddress);
+        config.set("forwarding.server-name", serverName);
+        config.set("forwarding.linger-ms", 0);
+        JavaPlugin plugin = mock(JavaPlugin.class);
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("CollectorTest"));
+        return plugin;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Passes the sink's bytes on to the collector. The collector's answers are thrown away
+     * until deliverAcks().
+     */
+    private static final class AckDroppingProxy {
+        private final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final int target;
+        private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+        private volatile boolean dropAcks = true;
+        private volatile int connections;
+
+        AckDroppingProxy(int target) throws IOException {
+            this.target = target;
+            Thread acceptor = new Thread(this::accept, "CollectorTest-Proxy");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        int connections() {
+            return connections;
+        }
+
+        void deliverAcks() {
+            dropAcks = false;
+        }
+
+        void disconnectAll() {
+            for (Socket socket : sockets) closeQuietly(socket);
+        }
+
+        void close() {
+            closeQuietly(server);
+            disconnectAll();
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    Socket sink = server.accept();
+                    sockets.add(sink);
+                    Socket collector;
+                    try {
+                        collector = new Socket(InetAddress.getLoopbackAddress(), target);
+                    } catch (IOException e) {
+                        closeQuietly(sink); // not listening yet, the sink retries
+                        continue;
+                    }
+                    sockets.add(collector);
+                    connections++;
+                    pump(sink, collector, false);
+                    pump(collector, sink, true);
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void pump(Socket from, Socket to, boolean acks) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        if (acks && dropAcks) continue;
+                        out.write(buffer, 0, read);
+                    }
+                } catch (IOException ignored) {
+                } finally {
+                    closeQuietly(from);
+                    closeQuietly(to);
+                }
+            }, "CollectorTest-Pump");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
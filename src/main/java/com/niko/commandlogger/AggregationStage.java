@@ -0,0 +1,199 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Collapses repeated commands in front of another sink (the Discord webhooks).
+ *
+ * Commands are grouped by player, command label and result. Within a window opened by the
+ * first occurrence, the first few of a group pass through as usual; the rest are only
+ * counted, and when the window ends one summary embed ("x37 in 10s") is sent in their
+ * place. A group that was collapsed starts its next window collapsed as well, so a player
+ * who keeps spamming produces one summary per window. Summaries that arrive from elsewhere
+ * (the collector receives those of every server) are added to their group's window, so the
+ * whole network sends one summary per group. Main thread only, or the owner's single lock.
+ */
+final class AggregationStage implements CommandSink {
+
+    private final Supplier<ConfigurationSection> config;
+    private final CommandSink downstream;
+    private final LongHashMap<Window> windows = new LongHashMap<>(64);
+    private final long[] expired = new long[256];
+
+    private boolean enabled;
+    private long windowMillis;
+    private Map<String, Integer> thresholds = Map.of(); // result key -> commands sent one by one per window
+
+    /**
+     * Occurrences of one (player, label, result) group in the current window.
+     */
+    private static final class Window {
+        final UUID playerId;
+        final String resultKey;
+        final String label;
+        long start;
+        int count;
+        int passed;     // sent one by one, never reset so a collapsed group stays collapsed
+        int suppressed; // left for the summary in this window
+        CommandEvent last;
+
+        Window(CommandEvent event, String label, long start) {
+            this.playerId = event.playerId;
+            this.resultKey = event.resultKey;
+            this.label = label;
+            this.start = start;
+        }
+
+        boolean matches(CommandEvent event) {
+            return playerId.equals(event.playerId) && resultKey.equals(event.resultKey)
+                    && labelEquals(label, event.command);
+        }
+    }
+
+    AggregationStage(JavaPlugin plugin, CommandSink downstream) {
+        this(() -> plugin.getConfig().getConfigurationSection("aggregation"), downstream);
+        // Windows are checked once a second, a summary may be up to a second late
+        plugin.getServer().getScheduler().runTaskTimer(plugin, this::expireWindows, 20L, 20L);
+    }
+
+    // Without a server: the owner calls expireWindows() about once a second, under the same lock as accept()
+    AggregationStage(Supplier<ConfigurationSection> config, CommandSink downstream) {
+        this.config = config;
+        this.downstream = downstream;
+        readConfig();
+        PluginMetrics.registerGauge("aggregation_windows", windows::size);
+    }
+
+    @Override
+    public void reload() {
+        readConfig();
+        downstream.reload();
+    }
+
+    private void readConfig() {
+        ConfigurationSection config = this.config.get();
+        enabled = config != null && config.getBoolean("enabled", true);
+        windowMillis = Math.max(1, config != null ? config.getLong("window-seconds", 10) : 10) * 1000;
+
+        Map<String, Integer> thresholds = new HashMap<>();
+        ConfigurationSection section = config != null ? config.getConfigurationSection("thresholds") : null;
+        if (section != null) {
+            for (String resultKey : section.getKeys(false)) {
+                int threshold = section.getInt(resultKey, 0);
+                if (threshold > 0) thresholds.put(resultKey, threshold);
+            }
+        }
+        this.thresholds = thresholds;
+        if (!enabled) flush();
+    }
+
+    @Override
+    public boolean wants(String resultKey) {
+        return downstream.wants(resultKey);
+    }
+
+    @Override
+    public void accept(CommandEvent event) {
+        Integer threshold = enabled ? thresholds.get(event.resultKey) : null;
+        if (threshold == null) {
+            downstream.accept(event);
+            return;
+        }
+
+        long key = key(event);
+        Window window = windows.get(key);
+        if (window == null) {
+            window = new Window(event, label(event.command), System.currentTimeMillis());
+            windows.put(key, window);
+        } else if (!window.matches(event)) {
+            // Two groups with the same 64 bit key, never collapse commands that only share a hash
+            downstream.accept(event);
+            return;
+        }
+
+        window.count += event.count;
+        window.last = event;
+        if (event.isSummary()) {
+            // Collapsed elsewhere already: its uses go into this window's summary, and the group stays collapsed
+            window.passed = Math.max(window.passed, threshold);
+            window.suppressed += event.count;
+        } else if (window.passed < threshold) {
+            window.passed++;
+            downstream.accept(event);
+        } else {
+            window.suppressed++;
+        }
+    }
+
+    // Sends the summaries of windows that ended
+    void expireWindows() {
+        expire(System.currentTimeMillis(), false);
+    }
+
+    // Sends the summaries of all open windows right away, called from onDisable and when aggregation is turned off
+    @Override
+    public void flush() {
+        expire(Long.MAX_VALUE, true);
+        windows.clear();
+    }
+
+    @Override
+    public void shutdown() {
+        downstream.shutdown();
+    }
+
+    private void expire(long now, boolean all) {
+        int[] found = new int[1];
+        windows.forEach((key, window) -> {
+            if (!all && now - window.start < windowMillis) return;
+
+            if (window.suppressed > 0) {
+                long span = Math.min(now, System.currentTimeMillis()) - window.start;
+                downstream.accept(window.last.summarize(window.count, span));
+                // Still spamming: the next window sends nothing one by one, only its summary
+                window.start = now;
+                window.count = 0;
+                window.suppressed = 0;
+                window.last = null;
+            } else if (found[0] < expired.length) {
+                expired[found[0]++] = key;
+            }
+        });
+        for (int i = 0; i < found[0]; i++) windows.remove(expired[i]);
+    }
+
+    private static long key(CommandEvent event) {
+        long h = event.playerId.getMostSignificantBits() * 0x9E3779B97F4A7C15L;
+        h ^= event.playerId.getLeastSignificantBits() * 0xC2B2AE3D27D4EB4FL;
+        h = h * 31 + event.resultKey.hashCode();
+        String command = event.command;
+        for (int i = labelStart(command), end = labelEnd(command); i < end; i++) {
+            h = h * 31 + Character.toLowerCase(command.charAt(i));
+        }
+        return h ^ (h >>> 29);
+    }
+
+    private static String label(String command) {
+        return command.substring(labelStart(command), labelEnd(command));
+    }
+
+    private static boolean labelEquals(String label, String command) {
+        int start = labelStart(command);
+        return labelEnd(command) - start == label.length() && command.regionMatches(true, start, label, 0, label.length());
+    }
+
+    private static int labelStart(String command) {
+        return command.startsWith("/") ? 1 : 0;
+    }
+
+    private static int labelEnd(String command) {
+        int space = command.indexOf(' ');
+        return space < 0 ? command.length() : space;
+    }
+}
@@ -0,0 +1,49 @@
+package com.niko.commandlogger;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Which players currently have a command in flight, checked by the packet listener before
+ * it touches any map.
+ *
+ * One counter per slot, indexed by a hash of the player's UUID. Two players sharing a slot
+ * only cost the map lookup this filter normally saves, a packet is never missed. Only the
+ * main thread arms and disarms; netty threads read.
+ */
+final class ArmedPlayers {
+
+    private static final int SLOTS = 1024; // power of two
+    private static final int MASK = SLOTS - 1;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(SLOTS);
+    private final AtomicInteger total = new AtomicInteger();
+
+    // Main thread only, once per pending command
+    void arm(UUID player) {
+        counts.incrementAndGet(slot(player));
+        total.incrementAndGet();
+    }
+
+    // Main thread only, once for every arm()
+    void disarm(UUID player) {
+        counts.decrementAndGet(slot(player));
+        total.decrementAndGet();
+    }
+
+    // Any thread. False means the player certainly has nothing pending.
+    boolean mayBeArmed(UUID player) {
+        return total.get() != 0 && counts.get(slot(player)) != 0;
+    }
+
+    int size() {
+        return total.get();
+    }
+
+    private static int slot(UUID player) {
+        long bits = player.getMostSignificantBits() ^ player.getLeastSignificantBits();
+        bits *= 0x9E3779B97F4A7C15L;
+        return (int) (bits >>> 54) & MASK;
+    }
+}
@@ -0,0 +1,469 @@
+package com.niko.commandlogger;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes every finalized command to local NDJSON files, whether or not a webhook is set up for it.
+ *
+ * One writer thread drains the queue in batches and flushes (optionally fsyncs) once per batch,
+ * so a burst of commands costs one write. Files roll over daily and at a size limit; closed
+ * files get a small .idx file with their time range and players, and are gzipped in the
+ * background. search() uses the .idx files to skip files that cannot contain a match without
+ * opening them.
+ */
+final class AuditLogSink implements CommandSink {
+
+    private static final String PREFIX = "commands-";
+    private static final String DATA_SUFFIX = ".ndjson";
+    private static final String GZIP_SUFFIX = ".ndjson.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int MAX_BATCH = 1024;
+    private static final DateTimeFormatter DISPLAY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JavaPlugin plugin;
+    private final Logger logger;
+    private final File directory;
+    private final BlockingQueue<CommandEvent> queue;
+    private final Thread writer;
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("AuditCompress"));
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile boolean enabled;
+    private volatile boolean compress;
+    private volatile boolean fsync;
+    private volatile long maxFileBytes;
+
+    // Writer thread only
+    private Segment segment;
+
+    AuditLogSink(JavaPlugin plugin) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("audit-log");
+        // Directory and queue size only take effect on restart
+        String directoryName = config != null ? config.getString("directory", "audit") : "audit";
+        this.directory = new File(directoryName).isAbsolute() ? new File(directoryName) : new File(plugin.getDataFolder(), directoryName);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1024, config != null ? config.getInt("queue-capacity", 65536) : 65536));
+        PluginMetrics.registerGauge("audit_queue_depth", queue::size);
+        PluginMetrics.registerGauge("audit_dropped_total", droppedEvents::sum);
+        reload();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.warning("Failed to create the audit log directory " + directory);
+        }
+        // Files left over from the last run: index and compress them off the writer thread. Listed
+        // before the writer starts, so the file it is about to open is never picked up here.
+        File[] leftovers = directory.listFiles();
+        if (leftovers != null) compressor.execute(() -> recoverClosedSegments(leftovers));
+
+        this.writer = new DaemonThreadFactory("AuditLog").newThread(this::runWriter);
+        this.writer.start();
+    }
+
+    @Override
+    public void reload() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("audit-log");
+        enabled = config == null || config.getBoolean("enabled", true);
+        compress = config == null || config.getBoolean("compress", true);
+        fsync = config != null && config.getBoolean("fsync", false);
+        maxFileBytes = Math.max(1, config != null ? config.getLong("max-file-mb", 16) : 16) * 1024 * 1024;
+    }
+
+    @Override
+    public boolean wants(String resultKey) {
+        return enabled;
+    }
+
+    @Override
+    public void accept(CommandEvent event) {
+        // Never block the main thread, a stuck disk costs log lines instead of ticks
+        if (!queue.offer(event)) {
+            droppedEvents.increment();
+            if (droppedEvents.sum() == 1) logger.warning("Audit log queue is full, commands are being dropped from the audit log.");
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The file closed last is compressed on the next start
+        compressor.shutdownNow();
+    }
+
+    // --- Writer thread ---
+
+    private void runWriter() {
+        List<CommandEvent> batch = new ArrayList<>(MAX_BATCH);
+        JsonWriter line = new JsonWriter();
+        while (running || !queue.isEmpty()) {
+            try {
+                CommandEvent first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                for (CommandEvent event : batch) {
+                    line.reset();
+                    writeLine(line, event);
+                    segmentFor(event.timestamp).write(event, line.buffer(), line.length());
+                }
+                // Group commit: one flush (and fsync) for the whole batch
+                if (segment != null) segment.commit(fsync);
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                logger.warning("Failed to write the audit log: " + e.getMessage());
+                closeSegment(false);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeSegment(false);
+    }
+
+    private Segment segmentFor(long timestamp) throws IOException {
+        LocalDate day = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        if (segment != null && (!segment.day.equals(day) || segment.size >= maxFileBytes)) {
+            closeSegment(compress);
+        }
+        if (segment == null) {
+            segment = new Segment(directory, day);
+        }
+        return segment;
+    }
+
+    private void closeSegment(boolean compressNow) {
+        if (segment == null) return;
+        Segment closed = segment;
+        segment = null;
+        try {
+            closed.close();
+            closed.index.write(new File(directory, closed.baseName + INDEX_SUFFIX));
+        } catch (IOException e) {
+            logger.warning("Failed to close audit log " + closed.baseName + ": " + e.getMessage());
+            return;
+        }
+        if (compressNow) compressor.execute(() -> compress(closed.baseName));
+    }
+
+    static void writeLine(JsonWriter out, CommandEvent event) {
+        out.raw("{\"ts\":").number(event.timestamp);
+        out.raw(",\"source\":\"").raw(event.source.key).raw("\"");
+        out.raw(",\"uuid\":\"").raw(event.playerId.toString()).raw("\"");
+        out.raw(",\"player\":").string(event.playerName);
+        out.raw(",\"command\":").string(event.command);
+        out.raw(",\"result\":").string(event.resultKey);
+        out.raw(",\"world\":").string(event.world);
+        out.raw(",\"x\":").number(event.x).raw(",\"y\":").number(event.y).raw(",\"z\":").number(event.z);
+        // A summary stands for count commands within window_ms (sampled command blocks, repeated commands)
+        out.raw(",\"count\":").number(event.count).raw(",\"window_ms\":").number(event.windowMillis);
+        out.raw("}\n");
+    }
+
+    // --- Compressor thread ---
+
+    private void recoverClosedSegments(File[] files) {
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(GZIP_SUFFIX + ".tmp")) {
+                // Compression was interrupted, the plain file is still there
+                file.delete();
+            } else if (name.startsWith(PREFIX) && name.endsWith(DATA_SUFFIX)) {
+                String baseName = name.substring(0, name.length() - DATA_SUFFIX.length());
+                File indexFile = new File(directory, baseName + INDEX_SUFFIX);
+                try {
+                    // The server stopped without closing this file, so it has no index yet
+                    if (!indexFile.exists()) SegmentIndex.scan(file).write(indexFile);
+                } catch (IOException e) {
+                    logger.warning("Failed to index audit log " + name + ": " + e.getMessage());
+                    continue;
+                }
+                if (compress) compress(baseName);
+            }
+        }
+    }
+
+    private void compress(String baseName) {
+        File source = new File(directory, baseName + DATA_SUFFIX);
+        File target = new File(directory, baseName + GZIP_SUFFIX);
+        File temp = new File(directory, baseName + GZIP_SUFFIX + ".tmp");
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), 64 * 1024)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            logger.warning("Failed to compress audit log " + source.getName() + ": " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        try {
+            // Searches prefer the plain file while both exist, so it is only deleted once the .gz is complete
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(source.toPath());
+        } catch (IOException e) {
+            logger.warning("Failed to replace audit log " + source.getName() + " with its compressed copy: " + e.getMessage());
+        }
+    }
+
+    // --- Search (any thread, usually an async task) ---
+
+    /**
+     * Returns chat lines for the commands logged between the two timestamps, optionally only
+     * those of one player (name or UUID). At most limit commands are listed, the newest ones.
+     */
+    List<String> search(long fromMillis, long toMillis, String player, int limit) {
+        String playerKey = player != null ? player.toLowerCase(Locale.ROOT) : null;
+        ArrayDeque<String> newest = new ArrayDeque<>(limit);
+        int matches = 0;
+        int scanned = 0;
+        int skipped = 0;
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX)
+                && (name.endsWith(DATA_SUFFIX) || name.endsWith(GZIP_SUFFIX)));
+        if (files == null) files = new File[0];
+        Arrays.sort(files); // names sort by date and sequence
+
+        for (File file : files) {
+            String name = file.getName();
+            boolean gzip = name.endsWith(GZIP_SUFFIX);
+            String baseName = name.substring(0, name.length() - (gzip ? GZIP_SUFFIX : DATA_SUFFIX).length());
+            // While a file is being compressed both copies exist, read the plain one
+            if (gzip && new File(directory, baseName + DATA_SUFFIX).exists()) continue;
+
+            // Files without an index (the one being written) are always scanned
+            SegmentIndex index = SegmentIndex.read(new File(directory, baseName + INDEX_SUFFIX));
+            if (index != null && (index.maxTimestamp < fromMillis || index.minTimestamp > toMillis
+                    || (playerKey != null && !index.players.contains(playerKey)))) {
+                skipped++;
+                continue;
+            }
+
+            scanned++;
+            try (BufferedReader reader = open(file, gzip)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JsonObject record = parseRecord(line);
+                    if (record == null) continue;
+
+                    long timestamp = record.get("ts").getAsLong();
+                    if (timestamp < fromMillis || timestamp > toMillis) continue;
+                    String recordPlayer = record.get("player").getAsString();
+                    if (playerKey != null && !playerKey.equalsIgnoreCase(recordPlayer)
+                            && !playerKey.equals(record.get("uuid").getAsString())) continue;
+
+                    matches++;
+                    if (newest.size() == limit) newest.removeFirst();
+                    newest.addLast(formatRecord(timestamp, recordPlayer, record));
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to read audit log " + name + ": " + e.getMessage());
+            }
+        }
+
+        List<String> lines = new ArrayList<>(newest.size() + 1);
+        lines.add("§e" + matches + " command(s) found §7(" + scanned + " file(s) read, " + skipped + " skipped)"
+                + (matches > newest.size() ? "§e, showing the newest " + newest.size() : ""));
+        lines.addAll(newest);
+        return lines;
+    }
+
+    private static BufferedReader open(File file, boolean gzip) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (gzip) in = new GZIPInputStream(in, 64 * 1024);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject parseRecord(String line) {
+        if (line.isEmpty()) return null;
+        try {
+            JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+            return record.has("ts") && record.has("player") && record.has("uuid") ? record : null;
+        } catch (RuntimeException e) {
+            // A line cut off by a crash
+            return null;
+        }
+    }
+
+    private static String formatRecord(long timestamp, String player, JsonObject record) {
+        String time = DISPLAY_TIME.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+        String result = record.has("result") ? record.get("result").getAsString() : "?";
+        String command = record.has("command") ? record.get("command").getAsString() : "";
+        int count = record.has("count") ? record.get("count").getAsInt() : 1;
+        String repeated = count > 1 && record.has("window_ms")
+                ? " §7(x" + count + " in " + WebhookSender.formatWindow(record.get("window_ms").getAsLong()) + ")" : "";
+        return "§7" + time + " §6" + player + " §8[" + result + "] §f" + command + repeated;
+    }
+
+    /**
+     * Parses a duration such as "30m", "12h" or "7d" into milliseconds, or returns -1.
+     */
+    static long parseDuration(String text) {
+        if (text == null || text.length() < 2) return -1;
+        long amount;
+        try {
+            amount = Long.parseLong(text.substring(0, text.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        if (amount <= 0) return -1;
+        return switch (Character.toLowerCase(text.charAt(text.length() - 1))) {
+            case 's' -> TimeUnit.SECONDS.toMillis(amount);
+            case 'm' -> TimeUnit.MINUTES.toMillis(amount);
+            case 'h' -> TimeUnit.HOURS.toMillis(amount);
+            case 'd' -> TimeUnit.DAYS.toMillis(amount);
+            case 'w' -> TimeUnit.DAYS.toMillis(amount * 7);
+            default -> -1;
+        };
+    }
+
+    /**
+     * The file currently being written. Writer thread only.
+     */
+    private static final class Segment {
+        final LocalDate day;
+        final String baseName;
+        final SegmentIndex index = new SegmentIndex();
+        private final FileOutputStream file;
+        private final OutputStream out;
+        long size;
+
+        Segment(File directory, LocalDate day) throws IOException {
+            this.day = day;
+            // commands-2024-05-01-001, numbered past any file of that day that already exists
+            String prefix = PREFIX + day + "-";
+            int sequence = 1;
+            while (new File(directory, String.format("%s%03d%s", prefix, sequence, DATA_SUFFIX)).exists()
+                    || new File(directory, String.format("%s%03d%s", prefix, sequence, GZIP_SUFFIX)).exists()) {
+                sequence++;
+            }
+            this.baseName = String.format("%s%03d", prefix, sequence);
+            this.file = new FileOutputStream(new File(directory, baseName + DATA_SUFFIX));
+            this.out = new BufferedOutputStream(file, 64 * 1024);
+        }
+
+        void write(CommandEvent event, byte[] line, int length) throws IOException {
+            out.write(line, 0, length);
+            size += length;
+            index.add(event.timestamp, event.playerId.toString(), event.playerName);
+        }
+
+        void commit(boolean fsync) throws IOException {
+            out.flush();
+            if (fsync) file.getFD().sync();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Time range and players of one file, stored next to it as a small text file:
+     * "minTimestamp maxTimestamp count" followed by one "uuid name" line per player.
+     */
+    private static final class SegmentIndex {
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        int count;
+        // Lower-case names and UUIDs, for lookups
+        final Set<String> players = new HashSet<>();
+        // "uuid name" pairs, for writing
+        private final Set<String> entries = new HashSet<>();
+
+        void add(long timestamp, String uuid, String name) {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            count++;
+            if (entries.add(uuid + " " + name)) {
+                players.add(uuid);
+                players.add(name.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        void write(File file) throws IOException {
+            StringBuilder out = new StringBuilder();
+            out.append(minTimestamp).append(' ').append(maxTimestamp).append(' ').append(count).append('\n');
+            for (String entry : entries) out.append(entry).append('\n');
+            Files.writeString(file.toPath(), out, StandardCharsets.UTF_8);
+        }
+
+        // Null if the file is missing or unreadable, the data file is then scanned
+        static SegmentIndex read(File file) {
+            if (!file.exists()) return null;
+            try {
+                List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                if (lines.isEmpty()) return null;
+                String[] header = lines.get(0).split(" ");
+                SegmentIndex index = new SegmentIndex();
+                index.minTimestamp = Long.parseLong(header[0]);
+                index.maxTimestamp = Long.parseLong(header[1]);
+                index.count = Integer.parseInt(header[2]);
+                for (int i = 1; i < lines.size(); i++) {
+                    String[] entry = lines.get(i).split(" ", 2);
+                    if (entry.length < 2) continue;
+                    index.players.add(entry[0]);
+                    index.players.add(entry[1].toLowerCase(Locale.ROOT));
+                }
+                return index;
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        // Builds the index of a file that was not closed properly
+        static SegmentIndex scan(File file) throws IOException {
+            SegmentIndex index = new SegmentIndex();
+            try (BufferedReader reader = open(file, false)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JsonObject record = parseRecord(line);
+                    if (record == null) continue;
+                    index.add(record.get("ts").getAsLong(), record.get("uuid").getAsString(), record.get("player").getAsString());
+                }
+            }
+            return index;
+        }
+    }
+}
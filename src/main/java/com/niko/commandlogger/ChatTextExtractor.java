@@ -0,0 +1,143 @@
+package com.niko.commandlogger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Pulls the plain text out of a chat component JSON string in a single streaming pass.
+ *
+ * Walks the whole component tree: "text", "extra" arrays, translatable components
+ * ("translate" key followed by its "with" arguments), keybind/selector/score components
+ * and the empty-key text entries that 1.20.3+ NBT components turn into when converted
+ * to JSON. Styling, click and hover events are skipped without being materialized.
+ *
+ * The text is handed to a {@link TextSink} piece by piece, which can stop the walk as soon
+ * as it has seen enough (e.g. once a phrase matched).
+ */
+final class ChatTextExtractor {
+
+    private ChatTextExtractor() {
+    }
+
+    interface TextSink {
+        // Receives the next piece of plain text. Return true to stop extracting.
+        boolean accept(String text);
+    }
+
+    /**
+     * Streams the plain text of the component to the sink.
+     * Returns true if the sink stopped the walk early.
+     */
+    static boolean extract(String json, TextSink sink) throws IOException {
+        if (json == null || json.isEmpty()) return false;
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return readComponent(reader, sink);
+        }
+    }
+
+    // Convenience wrapper that concatenates the whole text. Returns null if there is none.
+    static String extractPlainText(String json) throws IOException {
+        StringBuilder text = new StringBuilder();
+        extract(json, piece -> {
+            text.append(piece);
+            return false;
+        });
+        return text.length() == 0 ? null : text.toString();
+    }
+
+    private static boolean readComponent(JsonReader reader, TextSink sink) throws IOException {
+        JsonToken token = reader.peek();
+        switch (token) {
+            case STRING, NUMBER -> {
+                return emit(sink, reader.nextString());
+            }
+            case BOOLEAN -> {
+                return emit(sink, String.valueOf(reader.nextBoolean()));
+            }
+            case BEGIN_ARRAY -> {
+                return readComponentArray(reader, sink);
+            }
+            case BEGIN_OBJECT -> {
+                return readComponentObject(reader, sink);
+            }
+            default -> {
+                reader.skipValue();
+                return false;
+            }
+        }
+    }
+
+    private static boolean readComponentArray(JsonReader reader, TextSink sink) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (readComponent(reader, sink)) return true;
+        }
+        reader.endArray();
+        return false;
+    }
+
+    private static boolean readComponentObject(JsonReader reader, TextSink sink) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            boolean stop;
+            switch (name) {
+                // "" is what NBT components use for plain text entries in mixed lists
+                case "text", "", "keybind", "selector" -> stop = readText(reader, sink);
+                case "translate" -> {
+                    stop = readText(reader, sink);
+                    // Keep the key apart from the arguments that follow it
+                    if (!stop) stop = emit(sink, " ");
+                }
+                case "extra", "with" -> stop = readComponent(reader, sink);
+                case "score" -> stop = readScore(reader, sink);
+                default -> {
+                    // color, bold, clickEvent, hoverEvent, fallback, separator, ...
+                    reader.skipValue();
+                    stop = false;
+                }
+            }
+            if (stop) return true;
+        }
+        reader.endObject();
+        return false;
+    }
+
+    private static boolean readText(JsonReader reader, TextSink sink) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return emit(sink, reader.nextString());
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return emit(sink, String.valueOf(reader.nextBoolean()));
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    // {"score":{"name":"...","objective":"...","value":"..."}}, only the resolved value is shown
+    private static boolean readScore(JsonReader reader, TextSink sink) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return false;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("value")) {
+                if (readText(reader, sink)) return true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return false;
+    }
+
+    private static boolean emit(TextSink sink, String text) {
+        return !text.isEmpty() && sink.accept(text);
+    }
+}
@@ -0,0 +1,58 @@
+package com.niko.commandlogger;
+
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of a finalized command, taken on the main thread.
+ *
+ * It only holds what has to be read from the live Player object there (name and location).
+ * Everything else (Discord link, group, rendering) is looked up later on a worker thread.
+ * Commands of other senders use the sender's name, a stand-in UUID and, if it has one,
+ * its location; world is null otherwise.
+ */
+final class CommandEvent {
+
+    final CommandSource source;
+    final UUID playerId;
+    final String playerName;
+    final String command;
+    final String resultKey;
+    final String world;
+    final int x;
+    final int y;
+    final int z;
+    final long timestamp; // epoch millis
+    // Set for summaries of repeated commands: how often the command was used within windowMillis
+    final int count;
+    final long windowMillis;
+
+    CommandEvent(CommandSource source, UUID playerId, String playerName, String command, String resultKey,
+                 String world, int x, int y, int z, long timestamp) {
+        this(source, playerId, playerName, command, resultKey, world, x, y, z, timestamp, 1, 0);
+    }
+
+    private CommandEvent(CommandSource source, UUID playerId, String playerName, String command, String resultKey,
+                         String world, int x, int y, int z, long timestamp, int count, long windowMillis) {
+        this.source = source;
+        this.playerId = playerId;
+        this.playerName = playerName;
+        this.command = command;
+        this.resultKey = resultKey;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.timestamp = timestamp;
+        this.count = count;
+        this.windowMillis = windowMillis;
+    }
+
+    // A copy of this (the last) occurrence that stands for count occurrences within the window
+    CommandEvent summarize(int count, long windowMillis) {
+        return new CommandEvent(source, playerId, playerName, command, resultKey, world, x, y, z, timestamp, count, Math.max(1, windowMillis));
+    }
+
+    boolean isSummary() {
+        return windowMillis > 0;
+    }
+}
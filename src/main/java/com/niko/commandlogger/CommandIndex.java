@@ -0,0 +1,165 @@
+package com.niko.commandlogger;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the server's command map for classifying commands.
+ *
+ * Every label, alias and the plain form of every namespaced label ("minecraft:tp" is also
+ * found as "tp") points at its command. Lookups hash and compare a range of the typed
+ * command line in place, case-insensitively, so nothing is split, copied or lower-cased.
+ * A new index is built whenever the command map may have changed; readers just see the
+ * old or the new one.
+ */
+final class CommandIndex {
+
+    private final String[] labels;
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * A command together with what is needed to test its base permission.
+     */
+    static final class Entry {
+        final Command command;
+        // Nodes from getPermission() split once, null when the command tests permissions itself
+        private final String[] permissions;
+
+        private Entry(Command command) {
+            this.command = command;
+            this.permissions = usesDefaultPermissionTest(command) ? splitPermission(command.getPermission()) : null;
+        }
+
+        // Same result as command.testPermissionSilent(sender)
+        boolean testPermission(CommandSender sender) {
+            if (permissions == null) return command.testPermissionSilent(sender);
+            if (permissions.length == 0) return true;
+            for (String permission : permissions) {
+                if (sender.hasPermission(permission)) return true;
+            }
+            return false;
+        }
+    }
+
+    private CommandIndex(List<String> labels, List<Entry> entries) {
+        int capacity = Integer.highestOneBit(Math.max(8, labels.size() * 2 - 1)) << 1;
+        this.labels = new String[capacity];
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < labels.size(); i++) {
+            String label = labels.get(i);
+            int slot = hash(label, 0, label.length()) & mask;
+            while (this.labels[slot] != null) {
+                if (this.labels[slot].equalsIgnoreCase(label)) break; // first one wins
+                slot = (slot + 1) & mask;
+            }
+            if (this.labels[slot] != null) continue;
+            this.labels[slot] = label;
+            this.entries[slot] = entries.get(i);
+        }
+    }
+
+    /**
+     * Builds the index from the server's known commands (label -> command, namespaced labels
+     * and aliases included). Must run on the main thread, the map is not thread-safe.
+     */
+    static CommandIndex build(Map<String, Command> knownCommands) {
+        List<String> labels = new ArrayList<>(knownCommands.size() * 2);
+        List<Entry> entries = new ArrayList<>(knownCommands.size() * 2);
+        List<String> plainLabels = new ArrayList<>();
+        List<Entry> plainEntries = new ArrayList<>();
+
+        for (Map.Entry<String, Command> known : knownCommands.entrySet()) {
+            Command command = known.getValue();
+            if (command == null) continue;
+            Entry entry = new Entry(command);
+
+            String label = known.getKey();
+            labels.add(label);
+            entries.add(entry);
+
+            // Only a fallback for the plain form, an explicitly registered "tp" wins over "minecraft:tp"
+            int colon = label.indexOf(':');
+            if (colon >= 0 && colon < label.length() - 1) {
+                plainLabels.add(label.substring(colon + 1));
+                plainEntries.add(entry);
+            }
+            for (String alias : command.getAliases()) {
+                plainLabels.add(alias);
+                plainEntries.add(entry);
+            }
+        }
+        labels.addAll(plainLabels);
+        entries.addAll(plainEntries);
+        return new CommandIndex(labels, entries);
+    }
+
+    /**
+     * Looks up the label of a command line such as "/minecraft:tp Steve", i.e. everything
+     * after the leading slash up to the first space. Returns null for unknown commands.
+     */
+    Entry lookupCommandLine(CharSequence line) {
+        int start = line.length() > 0 && line.charAt(0) == '/' ? 1 : 0;
+        int end = start;
+        while (end < line.length() && line.charAt(end) != ' ') end++;
+        if (end == start) return null;
+
+        return lookup(line, start, end);
+    }
+
+    // Case-insensitive lookup of line[start, end)
+    Entry lookup(CharSequence line, int start, int end) {
+        int slot = hash(line, start, end) & mask;
+        String label;
+        while ((label = labels[slot]) != null) {
+            if (matches(label, line, start, end)) return entries[slot];
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        int size = 0;
+        for (String label : labels) if (label != null) size++;
+        return size;
+    }
+
+    private static boolean matches(String label, CharSequence line, int start, int end) {
+        if (label.length() != end - start) return false;
+        for (int i = 0; i < label.length(); i++) {
+            if (fold(label.charAt(i)) != fold(line.charAt(start + i))) return false;
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + fold(text.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    private static char fold(char c) {
+        if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        return Character.toLowerCase(c);
+    }
+
+    private static boolean usesDefaultPermissionTest(Command command) {
+        try {
+            return command.getClass().getMethod("testPermissionSilent", CommandSender.class).getDeclaringClass() == Command.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static String[] splitPermission(String permission) {
+        if (permission == null || permission.isEmpty()) return new String[0];
+        return Arrays.stream(permission.split(";")).filter(node -> !node.isEmpty()).toArray(String[]::new);
+    }
+}
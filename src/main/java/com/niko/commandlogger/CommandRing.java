@@ -0,0 +1,85 @@
+package com.niko.commandlogger;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The commands one player has in flight, oldest first.
+ *
+ * Only the main thread adds and removes entries; the packet listener reads the ring from
+ * netty threads without locking. Every entry carries its sequence number, so a reader
+ * that races with the main thread recycling a slot simply sees a mismatch and skips it.
+ */
+final class CommandRing {
+
+    private static final int CAPACITY = 16; // power of two
+    private static final int MASK = CAPACITY - 1;
+
+    private final AtomicReferenceArray<PendingCommand> slots = new AtomicReferenceArray<>(CAPACITY);
+    private volatile long head; // sequence of the oldest entry that may still be in the ring
+    private volatile long tail; // sequence the next command will get
+
+    // Main thread only. The sequence number for the next add().
+    long nextSequence() {
+        return tail;
+    }
+
+    /**
+     * Main thread only. Adds the command (created with nextSequence()). If the ring is
+     * full the oldest entry is removed to make room and returned, so the caller can
+     * finalize it early; otherwise returns null.
+     */
+    PendingCommand add(PendingCommand pending) {
+        PendingCommand evicted = null;
+        if (tail - head >= CAPACITY) {
+            evicted = slots.get((int) (head & MASK));
+            remove(evicted);
+        }
+        slots.set((int) (pending.sequence & MASK), pending);
+        tail = pending.sequence + 1; // publishes the entry to readers
+        return evicted;
+    }
+
+    // Main thread only
+    void remove(PendingCommand pending) {
+        if (pending == null) return;
+        int index = (int) (pending.sequence & MASK);
+        if (slots.get(index) == pending) slots.set(index, null);
+
+        long h = head;
+        long t = tail;
+        while (h < t && slots.get((int) (h & MASK)) == null) h++;
+        head = h;
+    }
+
+    // Any thread. The oldest command that still waits for its result, or null.
+    PendingCommand oldestPending() {
+        long t = tail;
+        for (long seq = head; seq < t; seq++) {
+            PendingCommand pending = slots.get((int) (seq & MASK));
+            if (pending != null && pending.sequence == seq && pending.isPending()) return pending;
+        }
+        return null;
+    }
+
+    // Any thread. The most recently typed command if it still waits for its result, or null.
+    PendingCommand newestPending() {
+        long t = tail;
+        if (t == head) return null;
+        PendingCommand pending = slots.get((int) ((t - 1) & MASK));
+        return pending != null && pending.sequence == t - 1 && pending.isPending() ? pending : null;
+    }
+
+    // Any thread. The oldest command that was logged but is still watched for late feedback, or null.
+    PendingCommand oldestWatched() {
+        long t = tail;
+        for (long seq = head; seq < t; seq++) {
+            PendingCommand pending = slots.get((int) (seq & MASK));
+            if (pending != null && pending.sequence == seq && pending.isWatched()) return pending;
+        }
+        return null;
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+}
@@ -0,0 +1,25 @@
+package com.niko.commandlogger;
+
+/**
+ * Destination for finalized commands (Discord webhooks, the local audit log, ...).
+ *
+ * wants() and accept() are called on the main thread and must return quickly; anything
+ * slow belongs on the sink's own threads.
+ */
+interface CommandSink {
+
+    // Checked before the event is built, so nothing is snapshotted for a command no sink wants
+    boolean wants(String resultKey);
+
+    void accept(CommandEvent event);
+
+    // Called on /commandwebhooklogger reload, after the config was reloaded
+    void reload();
+
+    // Called from onDisable once no more commands arrive, while the worker threads still run
+    default void flush() {
+    }
+
+    // Called from onDisable, after the last event was accepted
+    void shutdown();
+}
@@ -0,0 +1,49 @@
+package com.niko.commandlogger;
+
+import org.bukkit.command.BlockCommandSender;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.command.ProxiedCommandSender;
+import org.bukkit.command.RemoteConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.minecart.CommandMinecart;
+
+import java.util.UUID;
+
+/**
+ * Where a command came from. The key is what %source%, the audit log and the "sources"
+ * of routing rules use.
+ */
+enum CommandSource {
+    PLAYER("player"),
+    CONSOLE("console"),
+    RCON("rcon"),
+    COMMAND_BLOCK("command_block"),
+    COMMAND_MINECART("command_minecart"),
+    PROXIED("proxied"), // e.g. /execute as ... run
+    OTHER("other");
+
+    final String key;
+    // Stands in for the player UUID of senders that have none (console, rcon, ...)
+    final UUID syntheticId;
+
+    CommandSource(String key) {
+        this.key = key;
+        this.syntheticId = new UUID(0, ordinal());
+    }
+
+    static CommandSource of(CommandSender sender) {
+        if (sender instanceof Player) return PLAYER;
+        if (sender instanceof RemoteConsoleCommandSender) return RCON;
+        if (sender instanceof ConsoleCommandSender) return CONSOLE;
+        if (sender instanceof BlockCommandSender) return COMMAND_BLOCK;
+        if (sender instanceof CommandMinecart) return COMMAND_MINECART;
+        if (sender instanceof ProxiedCommandSender) return PROXIED;
+        return OTHER;
+    }
+
+    // Command blocks and minecarts can fire every tick, their commands are sampled
+    boolean isAutomated() {
+        return this == COMMAND_BLOCK || this == COMMAND_MINECART;
+    }
+}
@@ -7,73 +7,313 @@ import com.comphenix.protocol.events.PacketAdapter;
 import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.events.PacketEvent;
 import com.comphenix.protocol.wrappers.WrappedChatComponent;
-import github.scarsz.discordsrv.DiscordSRV;
-import net.luckperms.api.LuckPerms;
-import net.luckperms.api.LuckPermsProvider;
-import net.luckperms.api.model.user.User;
-import net.luckperms.api.node.types.InheritanceNode;
+import com.niko.commandlogger.PendingCommand.Result;
 import org.bukkit.Bukkit;
-import org.bukkit.ChatColor; // Need ChatColor for stripping color codes
 import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.command.BlockCommandSender;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandMap;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.ProxiedCommandSender;
 import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+import org.bukkit.event.server.ServerLoadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.scheduler.BukkitRunnable;
-
-// Removed GSON/json-simple imports to simplify dependencies
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class CommandWebhookListener implements Listener {
 
     private final JavaPlugin plugin;
-    private final WebhookSender webhookSender;
+    private final List<CommandSink> sinks;
     private final Map<String, Command> knownCommands;
-    private final Map<UUID, PendingCommand> pendingCommands = new ConcurrentHashMap<>();
-
-    public CommandWebhookListener(JavaPlugin plugin, ProtocolManager protocolManager, WebhookSender webhookSender) {
+    // Prebuilt from knownCommands, rebuilt on the next tick after plugins were enabled or disabled
+    private CommandIndex commandIndex;
+    private boolean commandIndexDirty;
+    // Commands each player has in flight, read lock-free by the packet listener
+    private final Map<UUID, CommandRing> pendingCommands = new ConcurrentHashMap<>();
+    // Cheap first check for the packet listener, most packets go to players with nothing pending
+    private final ArmedPlayers armed = new ArmedPlayers();
+    private final TickWheel finalizer = new TickWheel();
+    // Handed over by the packet listener: commands a packet decided, and late feedback of logged ones
+    private final Queue<PendingCommand> decided = new ConcurrentLinkedQueue<>();
+    private final Queue<PendingCommand> lateFeedback = new ConcurrentLinkedQueue<>();
+    private final FeedbackWindows feedbackWindows;
+    private final ProtocolManager protocolManager;
+    private final PacketAdapter packetListener;
+    private volatile PhraseMatcher feedbackMatcher;
+    private int waitTicks;
+    // Dynamic mode: the packet listener is only registered with ProtocolLib while commands are pending
+    private boolean dynamicListener;
+    private boolean listenerRegistered;
+    private int listenerIdleTicks;
+    private int idleTicks;
+    // Senders other than players: which are logged, and the sampling of command blocks and minecarts
+    private final Set<CommandSource> capturedSources = EnumSet.noneOf(CommandSource.class);
+    private final LongHashMap<AutomatedSample> automatedSamples = new LongHashMap<>(64);
+    private int automatedIntervalTicks;
+    private int automatedMaxPerSecond;
+    private int automatedBudget;
+    private volatile long currentTick; // read by the packet listener to time feedback
+
+    public CommandWebhookListener(JavaPlugin plugin, ProtocolManager protocolManager, List<CommandSink> sinks) {
         this.plugin = plugin;
-        this.webhookSender = webhookSender;
+        this.sinks = sinks;
         this.knownCommands = getKnownCommands();
+        this.commandIndex = CommandIndex.build(knownCommands);
+        this.protocolManager = protocolManager;
+        this.packetListener = createPacketListener();
+        this.feedbackWindows = new FeedbackWindows(plugin.getDataFolder(), plugin.getLogger());
+        PluginMetrics.registerGauge("armed_commands", armed::size);
+        PluginMetrics.registerGauge("feedback_window_commands", feedbackWindows::size);
+        reload();
         
-        registerPacketListener(protocolManager);
+        // One repeating task finalizes all pending commands instead of a scheduled task per command
+        plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+    }
+
+    // Re-reads the wait time and recompiles the feedback phrases, called on enable and on /commandwebhooklogger reload
+    public void reload() {
+        // Use the configured wait time, default to 2 ticks
+        waitTicks = plugin.getConfig().getInt("wait-ticks-after-execute", 2);
+        feedbackWindows.configure(plugin.getConfig().getConfigurationSection("feedback-window"), waitTicks);
+        // Order matters: the first category wins if a message contains phrases of both
+        feedbackMatcher = PhraseMatcher.fromConfig(plugin.getConfig().getConfigurationSection("feedback-phrases"),
+                "no-permission", "unknown-command");
+
+        String mode = plugin.getConfig().getString("packet-listener.mode", "static");
+        dynamicListener = "dynamic".equalsIgnoreCase(mode);
+        if (!dynamicListener && !"static".equalsIgnoreCase(mode)) {
+            plugin.getLogger().warning("Unknown packet-listener.mode '" + mode + "', using static.");
+        }
+        listenerIdleTicks = Math.max(0, plugin.getConfig().getInt("packet-listener.idle-ticks", 200));
+
+        capturedSources.clear();
+        for (CommandSource source : CommandSource.values()) {
+            if (source != CommandSource.PLAYER && plugin.getConfig().getBoolean("command-sources." + source.key, true)) {
+                capturedSources.add(source);
+            }
+        }
+        automatedIntervalTicks = Math.max(0, plugin.getConfig().getInt("command-sources.command-block-interval-ticks", 20));
+        automatedMaxPerSecond = Math.max(1, plugin.getConfig().getInt("command-sources.command-block-max-per-second", 20));
+        automatedBudget = automatedMaxPerSecond;
+        // Static mode listens all the time, dynamic mode registers on the next command
+        if (!dynamicListener || armed.size() > 0) registerPacketListener();
     }
 
     // --- BUKKIT EVENT LISTENER: Command Execution Trigger ---
     @EventHandler
     public void onCommand(PlayerCommandPreprocessEvent event) {
+        long start = System.nanoTime();
         Player player = event.getPlayer();
-        String fullCommand = event.getMessage();
-        // Use the configured wait time, default to 2 ticks
-        int waitTicks = plugin.getConfig().getInt("wait-ticks-after-execute", 2);
 
-        // 1. Store the command and set status to PENDING
-        PendingCommand pending = new PendingCommand(fullCommand);
-        pendingCommands.put(player.getUniqueId(), pending);
+        // 1. Store the command and set status to PENDING. Earlier commands that are still
+        //    waiting keep their own entry, nothing is overwritten.
+        CommandRing ring = pendingCommands.computeIfAbsent(player.getUniqueId(), uuid -> new CommandRing());
+        String label = feedbackWindows.isAdaptive() ? commandLabel(event.getMessage()) : null;
+        PendingCommand pending = new PendingCommand(player, event.getMessage(), ring.nextSequence(), label, currentTick);
+        // Arm before the command runs, its feedback is sent while it executes
+        armed.arm(player.getUniqueId());
+        if (!listenerRegistered) registerPacketListener();
+        PendingCommand evicted = ring.add(pending);
+        if (evicted != null) {
+            // More commands in flight than the ring holds, log the oldest one now (if it was not already)
+            release(evicted);
+            finalizeDue(evicted);
+        }
 
-        // 2. Schedule final logging (allowing time for the packet listener to run)
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                // Check if the packet listener has set a definitive result
-                if (pending.result == Result.PENDING) {
-                    // Fallback check: use Bukkit command map to check for base failures
-                    pending.result = detectCommandStatus(player, pending.command);
-                }
-                
-                finalizeCommand(player, pending);
+        // 2. Schedule final logging (allowing time for the packet listener to run). Feedback that
+        //    decides the result ends the wait early, see tick().
+        finalizer.schedule(pending, feedbackWindows.windowTicks(label));
+
+        PluginMetrics.COMMANDS.increment();
+        PluginMetrics.COMMAND_TIME.record(System.nanoTime() - start);
+    }
+
+    // --- BUKKIT EVENT LISTENER: Console, RCON, command blocks and other senders ---
+    // Fired before the command runs; those senders get no chat feedback we could wait for,
+    // so the command map decides the result right away and the command goes down the same pipeline.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onServerCommand(ServerCommandEvent event) {
+        CommandSender sender = event.getSender();
+        CommandSource source = CommandSource.of(sender);
+        if (!capturedSources.contains(source)) return;
+
+        int count = 1;
+        long windowMillis = 0;
+        if (source.isAutomated()) {
+            // A redstone clock can fire a command every tick: log at most one command per block (or minecart)
+            // and interval, within a global budget per second. Skipped ones are counted into the next one logged.
+            long key = automatedKey(sender, source);
+            AutomatedSample sample = automatedSamples.get(key);
+            if (sample == null) {
+                sample = new AutomatedSample(currentTick - automatedIntervalTicks);
+                automatedSamples.put(key, sample);
+            }
+            if (currentTick - sample.lastLoggedTick < automatedIntervalTicks || automatedBudget <= 0) {
+                sample.skipped++;
+                sample.lastSkippedTick = currentTick;
+                sample.lastSender = sender;
+                sample.lastCommand = event.getCommand();
+                PluginMetrics.AUTOMATED_SKIPPED.increment();
+                return;
+            }
+            automatedBudget--;
+            if (sample.skipped > 0) {
+                count = sample.skipped + 1;
+                windowMillis = (currentTick - sample.lastLoggedTick) * 50;
             }
-        }.runTaskLater(plugin, waitTicks);
+            sample.skipped = 0;
+            sample.lastLoggedTick = currentTick;
+            sample.lastSender = null;
+            sample.lastCommand = null;
+        }
+
+        logServerCommand(sender, source, event.getCommand(), count, windowMillis);
+    }
+
+    private void logServerCommand(CommandSender sender, CommandSource source, String command, int count, long windowMillis) {
+        String fullCommand = command.startsWith("/") ? command : "/" + command;
+        logCommand(sender, source, fullCommand, resultKey(detectCommandStatus(sender, fullCommand)), count, windowMillis);
+        PluginMetrics.SERVER_COMMANDS.increment();
+    }
+
+    /**
+     * Forgets blocks and minecarts that stopped firing (broken, clock turned off). Commands they had
+     * skipped since their last logged one are logged first as a summary, so none go uncounted.
+     * With idleTicks 0 every sample is flushed, used when the plugin is disabled.
+     */
+    private void sweepAutomatedSamples(long idleTicks) {
+        List<Long> idle = new ArrayList<>();
+        automatedSamples.forEach((key, sample) -> {
+            if (currentTick - Math.max(sample.lastLoggedTick, sample.lastSkippedTick) >= idleTicks) idle.add(key);
+        });
+        for (long key : idle) {
+            AutomatedSample sample = automatedSamples.get(key);
+            automatedSamples.remove(key);
+            if (sample.skipped > 0) {
+                logServerCommand(sample.lastSender, CommandSource.of(sample.lastSender), sample.lastCommand,
+                        sample.skipped, Math.max(1, sample.lastSkippedTick - sample.lastLoggedTick) * 50);
+            }
+        }
+    }
+
+    // Runs every tick, finalizes all commands whose wait time is over in one batch
+    private void tick() {
+        currentTick++;
+        if (currentTick % 20 == 0) automatedBudget = automatedMaxPerSecond;
+        if (currentTick % 1200 == 0) sweepAutomatedSamples(1200);
+
+        // Before finalizing, so commands registered by a plugin that was just enabled are known
+        if (commandIndexDirty) rebuildCommandIndex();
+
+        // Commands whose result a packet decided are logged now, without waiting for their window
+        for (PendingCommand pending; (pending = decided.poll()) != null; ) {
+            learnFeedback(pending);
+            if (!pending.finalized) {
+                finalizeDue(pending);
+                PluginMetrics.FINALIZED_EARLY.increment();
+            }
+        }
+        // Feedback after a command was logged came too late for it, but makes the next ones wait longer
+        for (PendingCommand pending; (pending = lateFeedback.poll()) != null; ) {
+            learnFeedback(pending);
+            PluginMetrics.LATE_FEEDBACK.increment();
+        }
+        finalizer.advance(this::finalizeDue);
+        if (currentTick % 6000 == 0) {
+            feedbackWindows.save(task -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task));
+        }
+
+        // Dynamic mode: drop the listener once nothing was pending for a while. The delay keeps
+        // a player typing a command every few seconds from re-registering it each time.
+        if (dynamicListener && listenerRegistered) {
+            if (armed.size() > 0) {
+                idleTicks = 0;
+            } else if (++idleTicks >= listenerIdleTicks) {
+                unregisterPacketListener();
+            }
+        }
+    }
+
+    private void finalizeDue(PendingCommand pending) {
+        if (pending.finalized) {
+            // Logged before: the end of its watch, or it was logged early (feedback, ring overflow)
+            if (pending.unwatch()) feedbackWindows.recordNoFeedback(pending.label);
+            release(pending);
+            return;
+        }
+        pending.finalized = true;
+        long start = System.nanoTime();
+
+        // Check if the packet listener has set a definitive result
+        boolean byFallback = false;
+        if (pending.isPending()) {
+            // Fallback check: use Bukkit command map to check for base failures.
+            // If a packet decides the result at the same moment, the packet wins the CAS.
+            byFallback = pending.decide(detectCommandStatus(pending.player, pending.command));
+        }
+        
+        finalizeCommand(pending.player, pending);
+
+        // Keep watching for feedback that comes after the window, so FeedbackWindows learns about it
+        long watchLeft = pending.tick + feedbackWindows.watchTicks() - currentTick;
+        if (byFallback && pending.label != null && feedbackWindows.isAdaptive() && watchLeft > 0 && !pending.released) {
+            pending.watch();
+            finalizer.schedule(pending, (int) watchLeft);
+        } else {
+            release(pending);
+        }
+        PluginMetrics.FINALIZE_TIME.record(System.nanoTime() - start);
+    }
+
+    // Takes the command out of its player's ring and disarms it, once
+    private void release(PendingCommand pending) {
+        if (pending.released) return;
+        pending.released = true;
+        pending.unwatch();
+        armed.disarm(pending.player.getUniqueId());
+        // Exactly this command, newer commands of the same player stay in flight
+        CommandRing ring = pendingCommands.get(pending.player.getUniqueId());
+        if (ring != null) ring.remove(pending);
+    }
+
+    private void learnFeedback(PendingCommand pending) {
+        if (pending.label != null && feedbackWindows.isAdaptive()) {
+            feedbackWindows.recordFeedback(pending.label, pending.feedbackTick - pending.tick);
+        }
+    }
+
+    // Logs every command that is still waiting right away, and sampled-out command block counts, called from onDisable
+    public void flushPending() {
+        finalizer.drain((PendingCommand pending) -> {
+            release(pending);
+            finalizeDue(pending);
+        });
+        sweepAutomatedSamples(0);
+        unregisterPacketListener();
+        feedbackWindows.save(Runnable::run);
     }
     
     // --- BUKKIT EVENT LISTENER: Cleanup on Quit ---
@@ -83,9 +323,45 @@ public class CommandWebhookListener implements Listener {
         pendingCommands.remove(event.getPlayer().getUniqueId());
     }
 
+    // --- BUKKIT EVENT LISTENERS: Keep the command index up to date ---
+    // Plugins register their commands while they are enabled, /reload disables and enables all of them.
+    // Many events arrive in the same tick during startup, so the index is rebuilt once on the next tick.
+    @EventHandler
+    public void onPluginEnable(PluginEnableEvent event) {
+        commandIndexDirty = true;
+    }
+
+    @EventHandler
+    public void onPluginDisable(PluginDisableEvent event) {
+        commandIndexDirty = true;
+    }
+
+    @EventHandler
+    public void onServerLoad(ServerLoadEvent event) {
+        commandIndexDirty = true;
+    }
+
+    private void rebuildCommandIndex() {
+        commandIndex = CommandIndex.build(knownCommands);
+        commandIndexDirty = false;
+    }
+
     // --- PROTOCOLLIB PACKET LISTENER: Intercept Server Messages ---
-    private void registerPacketListener(ProtocolManager protocolManager) {
-        protocolManager.addPacketListener(new PacketAdapter(
+    private void registerPacketListener() {
+        idleTicks = 0;
+        if (listenerRegistered) return;
+        protocolManager.addPacketListener(packetListener);
+        listenerRegistered = true;
+    }
+
+    private void unregisterPacketListener() {
+        if (!listenerRegistered) return;
+        protocolManager.removePacketListener(packetListener);
+        listenerRegistered = false;
+    }
+
+    private PacketAdapter createPacketListener() {
+        return new PacketAdapter(
             plugin, 
             ListenerPriority.LOWEST, // Give other plugins a chance to modify/cancel first
             PacketType.Play.Server.SYSTEM_CHAT, // Used for command feedback (1.19.1+)
@@ -95,124 +371,113 @@ public class CommandWebhookListener implements Listener {
             public void onPacketSending(PacketEvent event) {
                 Player player = event.getPlayer();
                 if (player == null) return;
+                // Nothing in flight for this player, skip the map lookup. This is all a chat packet costs between commands.
+                if (!armed.mayBeArmed(player.getUniqueId())) return;
                 
-                PendingCommand pending = pendingCommands.get(player.getUniqueId());
-                // Only process the packet if the player has a command pending and is still waiting for result
-                if (pending == null || pending.result != Result.PENDING) return;
+                CommandRing ring = pendingCommands.get(player.getUniqueId());
+                if (ring == null) return;
+                long tick = currentTick;
+
+                // Correlate the packet with the command that caused it. A packet sent from the main thread
+                // comes from the command being executed right now, the newest one. Packets handled on a
+                // netty thread arrive in the order the commands ran, so they belong to the oldest command
+                // that has not been decided yet.
+                PendingCommand pending = Bukkit.isPrimaryThread() ? ring.newestPending() : ring.oldestPending();
+                // Nothing waits for its result: the packet may still be late feedback of a command that was logged
+                PendingCommand watched = pending == null ? ring.oldestWatched() : null;
+                // Only process the packet if the player has a command pending or watched
+                if (pending == null && watched == null) return;
                 
+                long start = System.nanoTime();
+                PluginMetrics.PACKETS_INSPECTED.increment();
                 PacketContainer packet = event.getPacket();
-                String message = null;
+                PhraseMatcher.Scan scan = feedbackMatcher.startScan();
                 
                 // --- MESSAGE EXTRACTION LOGIC ---
-                // FIX: Use getJson() and then simple string manipulation (no external JSON libraries)
+                // Walk the component tree (extra, translate/with, ...) with Gson's streaming reader and feed
+                // the text straight into the phrase matcher, stopping as soon as the result is decided
                 WrappedChatComponent component = packet.getChatComponents().readSafely(0);
                 if (component != null) {
                     try {
-                        String jsonString = component.getJson();
-                        message = extractPlainTextFromJson(jsonString);
+                        ChatTextExtractor.extract(component.getJson(), scan);
                         
-                        if (message == null || message.isEmpty()) {
-                            // Fallback 1: If simple JSON parsing fails, read the raw string field (older protocols)
-                            message = packet.getStrings().readSafely(0);
+                        if (!scan.sawText()) {
+                            // Fallback 1: If the component has no text, read the raw string field (older protocols)
+                            scan.feed(packet.getStrings().readSafely(0));
                         }
                     } catch (Exception e) {
                         plugin.getLogger().warning("Failed to extract text from WrappedChatComponent JSON for player " + player.getName() + ": " + e.getMessage());
                         // Fallback 2: If anything throws an exception, read the raw string field
-                        message = packet.getStrings().readSafely(0);
+                        scan.reset();
+                        scan.feed(packet.getStrings().readSafely(0));
                     }
                 } else {
                      // Fallback 3: If no component was found, read the raw string field
-                    message = packet.getStrings().readSafely(0);
+                    scan.feed(packet.getStrings().readSafely(0));
                 }
 
-                if (message == null || message.isEmpty()) {
-                    return; // Message is empty or couldn't be extracted, ignore.
-                }
-                
-                // Strip all formatting codes before checking for keywords
-                String lowerCaseMessage = ChatColor.stripColor(message).toLowerCase();
-                
-                // Check for denial messages (Permission failure from command usage or sub-command checks)
-                if (lowerCaseMessage.contains("no permission") || 
-                    lowerCaseMessage.contains("you do not have permission") ||
-                    lowerCaseMessage.contains("you do not have access") ||
-                    lowerCaseMessage.contains("denied") ||
-                    lowerCaseMessage.contains("missing permission") ||
-                    lowerCaseMessage.contains("you don't have permission") ||
-                    lowerCaseMessage.contains("i'm sorry, but you do not have permission")) 
-                {
-                    pending.result = Result.NO_PERMISSION;
-                } else if (lowerCaseMessage.contains("unknown command")) {
-                    pending.result = Result.UNKNOWN;
+                // Phrases come from feedback-phrases in config.yml, matched case-insensitively with color codes skipped.
+                // Denial messages win over unknown-command ones (category order in the matcher).
+                Result result = switch (scan.result()) {
+                    case 0 -> Result.NO_PERMISSION;
+                    case 1 -> Result.UNKNOWN;
+                    default -> null; // Not a message we classify
+                };
+                if (result != null) {
+                    PluginMetrics.PACKETS_MATCHED.increment();
+                    // The main thread logs the command on its next tick instead of waiting for the window
+                    if (pending != null && pending.decide(result)) {
+                        pending.feedbackTick = tick;
+                        decided.offer(pending);
+                    } else if (watched != null && watched.unwatch()) {
+                        watched.feedbackTick = tick;
+                        lateFeedback.offer(watched);
+                    }
                 }
+                PluginMetrics.PACKET_TIME.record(System.nanoTime() - start);
             }
-        });
+        };
     }
     
-    // Simple utility to extract the primary text from a basic chat component JSON string
-    // This method avoids external JSON dependencies (like GSON/json-simple) by using simple string manipulation.
-    // NOTE: This is HIGHLY FRAGILE and only works for simple {"text":"message"} components.
-    private String extractPlainTextFromJson(String jsonString) {
-        if (jsonString == null || jsonString.isEmpty()) return null;
-        
-        // Trim surrounding spaces
-        String trimmed = jsonString.trim();
-        
-        // Check for simple {"text":"..."} structure.
-        if (trimmed.startsWith("{\"text\":\"") && trimmed.endsWith("}")) {
-            try {
-                // Find the start of the text value: "text":"
-                int start = trimmed.indexOf("\"text\":\"") + 8; 
-                // Find the end quote for the text field, which is followed by the closing brace: "}
-                int end = trimmed.lastIndexOf("\"}"); 
-                
-                if (start != -1 && end != -1 && start < end) {
-                    String rawText = trimmed.substring(start, end);
-                    
-                    // Un-escape commonly escaped characters like "
-                    return rawText.replace("\\\"", "\"");
-                }
-            } catch (Exception e) {
-                // If substring manipulation fails for any reason
-                plugin.getLogger().warning("Simple string extraction failed for: " + trimmed);
-            }
-        }
-        
-        // Return null if the simple structure wasn't matched or manipulation failed.
-        // This triggers the fallback to packet.getStrings().readSafely(0) in the listener.
-        return null; 
-    }
-
-
     // --- Core Logic ---
 
     private void finalizeCommand(Player player, PendingCommand pending) {
-        Result result = pending.result; 
-
-        String resultKey;
-        switch (result) {
-            case NO_PERMISSION -> resultKey = "no-permission";
-            case UNKNOWN -> resultKey = "unknown-command";
-            case EXECUTED -> resultKey = "executed";
-            default -> { // Should only happen if the command was pending and no packet was sent (i.e., successfully executed)
-                resultKey = "executed";
-            }
-        }
+        logCommand(player, CommandSource.PLAYER, pending.command, resultKey(pending.getResult()), 1, 0);
+    }
+
+    // Name of the typed command for learning its feedback time, aliases share it. Null if the server does not know it.
+    private String commandLabel(String fullCommand) {
+        CommandIndex.Entry entry = commandIndex.lookupCommandLine(fullCommand);
+        return entry != null ? entry.command.getName().toLowerCase(Locale.ROOT) : null;
+    }
 
-        sendWebhook(player, pending.command, resultKey);
-        pendingCommands.remove(player.getUniqueId());
+    private static String resultKey(Result result) {
+        return switch (result) {
+            case NO_PERMISSION -> "no-permission";
+            case UNKNOWN -> "unknown-command";
+            case EXECUTED -> "executed";
+            // Should only happen if the command was pending and no packet was sent (i.e., successfully executed)
+            default -> "executed";
+        };
     }
 
-    private Result detectCommandStatus(Player player, String fullCommand) {
+    private Result detectCommandStatus(CommandSender sender, String fullCommand) {
         // This is the fallback, primarily to handle commands that might not send a message on success/failure, 
         // or to distinguish UNKNOWN/NO_BASE_PERMISSION if the packet listener missed it.
-        String commandLabel = fullCommand.split(" ")[0].substring(1).toLowerCase();
-        Command command = knownCommands.get(commandLabel);
-
-        if (command == null) return Result.UNKNOWN;
+        CommandIndex.Entry entry = commandIndex.lookupCommandLine(fullCommand);
+        if (entry == null) {
+            // Commands can be registered without any plugin event, check the live map before calling it unknown
+            int end = fullCommand.indexOf(' ');
+            String commandLabel = fullCommand.substring(fullCommand.startsWith("/") ? 1 : 0, end < 0 ? fullCommand.length() : end);
+            Command command = knownCommands.get(commandLabel.toLowerCase(Locale.ROOT));
+            if (command == null) return Result.UNKNOWN;
+
+            commandIndexDirty = true;
+            return command.testPermissionSilent(sender) ? Result.EXECUTED : Result.NO_PERMISSION;
+        }
         
         // If the base permission fails, it's definitely a NO_PERMISSION event.
-        if (!command.testPermissionSilent(player)) return Result.NO_PERMISSION;
+        if (!entry.testPermission(sender)) return Result.NO_PERMISSION;
 
         // Otherwise, assume it executed successfully (as the packet listener should have caught sub-permission failures)
         return Result.EXECUTED; 
@@ -220,25 +485,85 @@ public class CommandWebhookListener implements Listener {
     
     // --- Utility Methods ---
 
-    private void sendWebhook(Player player, String fullCommand, String resultKey) {
+    // count > 1 logs a summary standing for that many commands within windowMillis
+    private void logCommand(CommandSender sender, CommandSource source, String fullCommand, String resultKey,
+                            int count, long windowMillis) {
         // Note: The configuration keys are expected to use hyphens (e.g., "no-permission") 
-        // to match the keys defined in finalizeCommand.
-        String webhookUrl = plugin.getConfig().getString("webhooks." + resultKey);
-        if (webhookUrl == null || webhookUrl.isEmpty()) return;
+        // to match the keys defined in resultKey().
+        CommandEvent event = null;
+        for (CommandSink sink : sinks) {
+            if (!sink.wants(resultKey)) continue;
+
+            if (event == null) {
+                event = snapshot(sender, source, fullCommand, resultKey);
+                if (count > 1) event = event.summarize(count, windowMillis);
+            }
+            sink.accept(event);
+        }
+    }
 
-        var template = plugin.getConfig().getConfigurationSection("templates." + resultKey);
-        if (template == null) return;
+    // Only snapshot what needs the live sender here, the rest is looked up off the main thread
+    private static CommandEvent snapshot(CommandSender sender, CommandSource source, String fullCommand, String resultKey) {
+        UUID id = source.syntheticId;
+        String name = sender.getName();
+        Location loc = null;
+        switch (source) {
+            case PLAYER, COMMAND_MINECART -> {
+                Entity entity = (Entity) sender;
+                id = entity.getUniqueId();
+                loc = entity.getLocation();
+            }
+            case COMMAND_BLOCK -> {
+                Block block = ((BlockCommandSender) sender).getBlock();
+                id = new UUID(source.ordinal(), blockKey(block));
+                loc = block.getLocation();
+                if ("@".equals(name)) name = "Command Block"; // the default name of an unnamed command block
+            }
+            case PROXIED -> {
+                // e.g. /execute as <callee> run ..., typed by the caller
+                ProxiedCommandSender proxied = (ProxiedCommandSender) sender;
+                name = proxied.getCaller().getName() + " as " + proxied.getCallee().getName();
+                if (proxied.getCallee() instanceof Entity callee) {
+                    id = callee.getUniqueId();
+                    loc = callee.getLocation();
+                }
+            }
+            default -> {
+                // Console, rcon and unknown senders have no location
+            }
+        }
+        String world = loc != null && loc.getWorld() != null ? loc.getWorld().getName() : null;
+        return new CommandEvent(source, id, name, fullCommand, resultKey, world,
+                loc != null ? loc.getBlockX() : 0, loc != null ? loc.getBlockY() : 0, loc != null ? loc.getBlockZ() : 0,
+                System.currentTimeMillis());
+    }
 
-        String discordId = DiscordSRV.getPlugin() != null
-                ? DiscordSRV.getPlugin().getAccountLinkManager().getDiscordId(player.getUniqueId())
-                : null;
-        String discordMention = discordId != null ? "<@" + discordId + ">" : "Not linked";
+    // Identifies the command block or minecart for sampling
+    private static long automatedKey(CommandSender sender, CommandSource source) {
+        if (source == CommandSource.COMMAND_BLOCK) return blockKey(((BlockCommandSender) sender).getBlock());
+        UUID id = ((Entity) sender).getUniqueId();
+        return id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+    }
 
-        String group = getPrimaryGroup(player);
-        Location loc = player.getLocation();
+    // Block position packed like the game does (x and z 26 bits, y 12 bits), mixed with the world
+    private static long blockKey(Block block) {
+        long position = ((long) (block.getX() & 0x3FFFFFF) << 38) | ((long) (block.getZ() & 0x3FFFFFF) << 12) | (block.getY() & 0xFFF);
+        return position ^ (block.getWorld().getName().hashCode() * 0x9E3779B97F4A7C15L);
+    }
 
-        // Assuming WebhookSender has a compatible sendWebhook method
-        webhookSender.sendWebhook(webhookUrl, template, player, fullCommand, discordMention, group, loc);
+    /**
+     * Sampling state of one command block or minecart. Main thread only.
+     */
+    private static final class AutomatedSample {
+        long lastLoggedTick;
+        int skipped;                // commands not logged since lastLoggedTick
+        long lastSkippedTick;
+        CommandSender lastSender;   // the newest skipped command, logged as the summary if the block goes idle
+        String lastCommand;
+
+        AutomatedSample(long lastLoggedTick) {
+            this.lastLoggedTick = lastLoggedTick;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -257,48 +582,4 @@ public class CommandWebhookListener implements Listener {
             plugin.getLogger().warning("Failed to get known commands: " + e.getMessage());
             return Collections.emptyMap();
         }
-    }
-
-    private String getPrimaryGroup(Player player) {
-        try {
-            LuckPerms api = LuckPermsProvider.get();
-            User user = api.getUserManager().getUser(player.getUniqueId());
-            if (user == null) return "No user data";
-
-            String primaryGroup = user.getPrimaryGroup();
-            // CORRECTED LOGIC: Only return primaryGroup if it is NOT null AND NOT empty.
-            if (primaryGroup != null && !primaryGroup.isEmpty()) return primaryGroup;
-
-            return user.getNodes().stream()
-                    .filter(node -> node instanceof InheritanceNode)
-                    .map(node -> ((InheritanceNode) node).getGroupName())
-                    .findFirst().orElse("No group");
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to get LuckPerms primary group: " + e.getMessage());
-            return "Error fetching group";
-        }
-    }
-
-    private enum Result { PENDING, EXECUTED, NO_PERMISSION, UNKNOWN }
-
-    private static class PendingCommand {
-        final String command;
-        Result result = Result.PENDING; // Initial state
-
-        PendingCommand(String command) {
-            this.command = command;
-        }
-        
-        public Result getResult() {
-            return result;
-        }
-        
-        public void setResult(Result result) {
-            this.result = result;
-        }
-        
-        public String getCommand() {
-            return command;
-        }
-    }
-}
\ No newline at end of file
+    }}
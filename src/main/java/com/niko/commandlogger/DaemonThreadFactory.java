@@ -0,0 +1,25 @@
+package com.niko.commandlogger;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names our threads "CommandWebhookLogger-<name>-<n>" and makes them daemons, so they
+ * show up clearly in thread dumps and can never keep the server from stopping.
+ */
+final class DaemonThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger threadId = new AtomicInteger();
+
+    DaemonThreadFactory(String name) {
+        this.prefix = "CommandWebhookLogger-" + name + "-";
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + threadId.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,45 @@
+package com.niko.commandlogger;
+
+import github.scarsz.discordsrv.DiscordSRV;
+import github.scarsz.discordsrv.api.Subscribe;
+import github.scarsz.discordsrv.api.events.AccountLinkedEvent;
+import github.scarsz.discordsrv.api.events.AccountUnlinkedEvent;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Everything that touches the DiscordSRV API. Only loaded when DiscordSRV is installed.
+ */
+final class DiscordSrvHook {
+
+    private final Consumer<UUID> onLinkChange;
+
+    DiscordSrvHook(Consumer<UUID> onLinkChange) {
+        this.onLinkChange = onLinkChange;
+    }
+
+    void subscribe() {
+        DiscordSRV.api.subscribe(this);
+    }
+
+    void unsubscribe() {
+        DiscordSRV.api.unsubscribe(this);
+    }
+
+    // May hit DiscordSRV's account storage, never call this on the main thread
+    String getDiscordId(UUID playerId) {
+        DiscordSRV discordSrv = DiscordSRV.getPlugin();
+        return discordSrv != null ? discordSrv.getAccountLinkManager().getDiscordId(playerId) : null;
+    }
+
+    @Subscribe
+    public void onAccountLinked(AccountLinkedEvent event) {
+        onLinkChange.accept(event.getPlayer().getUniqueId());
+    }
+
+    @Subscribe
+    public void onAccountUnlinked(AccountUnlinkedEvent event) {
+        onLinkChange.accept(event.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,149 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An embed template from config.yml compiled into the JSON it renders to.
+ *
+ * Everything that does not depend on the command (author, color, footer icon, the JSON
+ * structure itself) is resolved and encoded once when the config is loaded. Rendering
+ * then only copies those fragments and writes the placeholder values, keeping every text
+ * field within Discord's limits.
+ */
+final class EmbedTemplate {
+
+    private static final byte[] DESCRIPTION_FIELD = ascii("\",\"description\":\"");
+    private static final byte[] FOOTER_FIELD = ascii(",\"footer\":{\"text\":\"");
+    private static final byte[] THUMBNAIL_FIELD = ascii(",\"thumbnail\":{\"url\":\"");
+    private static final byte[] IMAGE_FIELD = ascii(",\"image\":{\"url\":\"");
+
+    private final byte[] head;                 // {"author":{...},"title":"
+    private final int authorCodePoints;
+    private final TemplateString title;
+    private final TemplateString summaryTitle; // title plus summary_suffix, for summaries of repeated commands
+    private final TemplateString description;
+    private final byte[] colorField;           // ","color":123
+    private final TemplateString footer;       // null if the footer is always empty
+    private final byte[] footerTail;           // closes the footer object, including the icon
+    private final TemplateString thumbnailUrl; // null if disabled
+    private final TemplateString imageUrl;     // null if disabled
+    private final boolean includeTimestamp;
+
+    private EmbedTemplate(ConfigurationSection template, ConfigurationSection defaults) {
+        String authorName = defaults.getString("author_name", "Command Logs");
+        int color = template.getInt("color", defaults.getInt("color", 5814783));
+        String footerIcon = defaults.getString("footer_icon_url", "");
+
+        JsonWriter head = new JsonWriter();
+        head.raw("{\"author\":{\"name\":\"");
+        head.beginText(JsonWriter.MAX_AUTHOR);
+        head.text(authorName);
+        this.authorCodePoints = head.endText();
+        this.head = head.raw("\"},\"title\":\"").toByteArray();
+        this.title = TemplateString.compile(template.getString("title", ""));
+        this.summaryTitle = TemplateString.compile(template.getString("title", "")
+                + template.getString("summary_suffix", defaults.getString("summary_suffix", " (x%count% in %window%)")));
+        this.description = TemplateString.compile(template.getString("description", ""));
+        this.colorField = ascii("\",\"color\":" + color);
+
+        TemplateString footer = TemplateString.compile(template.getString("footer", defaults.getString("footer_text", "")));
+        this.footer = footer.isEmpty() ? null : footer;
+        JsonWriter footerTail = new JsonWriter().raw("\"");
+        if (footerIcon != null && !footerIcon.isEmpty()) {
+            footerTail.raw(",\"icon_url\":").string(footerIcon);
+        }
+        this.footerTail = footerTail.raw("}").toByteArray();
+
+        TemplateString thumbnail = TemplateString.compile(template.getString("thumbnail_url", ""));
+        this.thumbnailUrl = template.getBoolean("include_thumbnail", false) && !thumbnail.isEmpty() ? thumbnail : null;
+        TemplateString image = TemplateString.compile(template.getString("image_url", ""));
+        this.imageUrl = template.getBoolean("include_image", false) && !image.isEmpty() ? image : null;
+
+        this.includeTimestamp = template.getBoolean("include_timestamp", defaults.getBoolean("include_timestamp", true));
+    }
+
+    // Compiles every section under "templates", keyed by its name (e.g. "no-permission")
+    static Map<String, EmbedTemplate> compileAll(ConfigurationSection config) {
+        Map<String, EmbedTemplate> compiled = new HashMap<>();
+        ConfigurationSection templates = config.getConfigurationSection("templates");
+        if (templates == null) return compiled;
+
+        ConfigurationSection defaults = config.getConfigurationSection("embed_defaults");
+        if (defaults == null) defaults = new MemoryConfiguration(); // every lookup falls back to its hardcoded default
+
+        for (String key : templates.getKeys(false)) {
+            ConfigurationSection template = templates.getConfigurationSection(key);
+            if (template != null) {
+                compiled.put(key, new EmbedTemplate(template, defaults));
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Writes this embed as a JSON object. Title, description and footer are cut to Discord's
+     * limits, together with the author at most 6000 characters. Returns that character count,
+     * the dispatcher needs it to keep a whole message within 6000 as well.
+     */
+    int render(JsonWriter out, TemplateValues values) {
+        int budget = JsonWriter.MAX_EMBED_TOTAL - authorCodePoints;
+        out.raw(head);
+        out.beginText(Math.min(JsonWriter.MAX_TITLE, budget));
+        (values.window != null ? summaryTitle : title).writeTo(out, values);
+        budget -= out.endText();
+        out.raw(DESCRIPTION_FIELD);
+        out.beginText(Math.min(JsonWriter.MAX_DESCRIPTION, budget));
+        description.writeTo(out, values);
+        budget -= out.endText();
+        out.raw(colorField);
+
+        if (footer != null) {
+            int mark = out.length();
+            out.raw(FOOTER_FIELD);
+            out.beginText(Math.min(JsonWriter.MAX_FOOTER, budget));
+            footer.writeTo(out, values);
+            int written = out.endText();
+            if (written > 0) {
+                budget -= written;
+                out.raw(footerTail);
+            } else {
+                out.setLength(mark);
+            }
+        }
+        if (thumbnailUrl != null) {
+            writeUrlObject(out, THUMBNAIL_FIELD, thumbnailUrl, values);
+        }
+        if (imageUrl != null) {
+            writeUrlObject(out, IMAGE_FIELD, imageUrl, values);
+        }
+        if (includeTimestamp) {
+            out.raw(",\"timestamp\":\"").raw(DateTimeFormatter.ISO_INSTANT.format(Instant.now())).raw("\"");
+        }
+        out.raw("}");
+        return JsonWriter.MAX_EMBED_TOTAL - budget;
+    }
+
+    // Leaves the object out if the URL renders empty
+    private static void writeUrlObject(JsonWriter out, byte[] prefix, TemplateString url, TemplateValues values) {
+        int mark = out.length();
+        out.raw(prefix);
+        out.beginText(Integer.MAX_VALUE);
+        url.writeTo(out, values);
+        if (out.endText() > 0) {
+            out.raw("\"}");
+        } else {
+            out.setLength(mark);
+        }
+    }
+
+    private static byte[] ascii(String json) {
+        return json.getBytes(StandardCharsets.US_ASCII);
+    }
+}
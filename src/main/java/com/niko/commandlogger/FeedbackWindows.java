@@ -0,0 +1,189 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * How long a player's command waits for chat feedback before it is logged, learned per command.
+ *
+ * For every command a small histogram counts after how many ticks a packet decided the result
+ * (no permission, unknown command). Commands that got no such packet while they were watched
+ * count as needing no wait. A command then waits as long as 99% of its earlier ones needed,
+ * clamped to min-ticks/max-ticks; commands with too little history wait the fixed default.
+ * Counts are halved once a command reaches MAX_SAMPLES, so the window follows plugins that
+ * change. The histograms are saved to feedback-windows.yml and survive restarts.
+ * Main thread only, saving writes a snapshot off the main thread.
+ */
+final class FeedbackWindows {
+
+    private static final String FILE_NAME = "feedback-windows.yml";
+    private static final int BUCKETS = 64; // ticks 0..62, the last bucket holds everything later
+    private static final int MAX_WINDOW_TICKS = 60;
+    private static final int MAX_SAMPLES = 1024;
+    private static final double PERCENTILE = 99;
+
+    private final File file;
+    private final Logger logger;
+    private final Map<String, Stats> stats = new HashMap<>();
+    private boolean dirty;
+
+    private boolean adaptive;
+    private int defaultTicks;
+    private int minTicks;
+    private int maxTicks;
+    private int minSamples;
+
+    /**
+     * Feedback history of one command.
+     */
+    private static final class Stats {
+        final int[] ticks = new int[BUCKETS]; // feedback that arrived this many ticks after the command
+        int none;                             // commands that got no feedback while they were watched
+        int total;
+        int window = -1;                      // cached, -1 = recompute
+    }
+
+    FeedbackWindows(File dataFolder, Logger logger) {
+        this.file = new File(dataFolder, FILE_NAME);
+        this.logger = logger;
+        load();
+    }
+
+    // Reads the bounds, called on enable and reload
+    void configure(ConfigurationSection config, int defaultTicks) {
+        this.defaultTicks = Math.max(1, defaultTicks);
+        adaptive = config == null || config.getBoolean("adaptive", true);
+        minTicks = Math.max(1, config == null ? 1 : config.getInt("min-ticks", 1));
+        maxTicks = Math.min(MAX_WINDOW_TICKS, Math.max(minTicks, config == null ? 20 : config.getInt("max-ticks", 20)));
+        minSamples = Math.max(1, config == null ? 20 : config.getInt("min-samples", 20));
+        stats.values().forEach(s -> s.window = -1);
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    // How long feedback is watched for after a command, learning only sees what arrives within this
+    int watchTicks() {
+        return maxTicks;
+    }
+
+    // Ticks to wait for feedback of the command, label null for commands the server does not know
+    int windowTicks(String label) {
+        if (!adaptive || label == null) return defaultTicks;
+        Stats s = stats.get(label);
+        if (s == null || s.total < minSamples) return defaultTicks;
+        if (s.window < 0) s.window = computeWindow(s);
+        return s.window;
+    }
+
+    // A packet decided the result of a command of this label after the given number of ticks
+    void recordFeedback(String label, long ticks) {
+        Stats s = statsOf(label);
+        s.ticks[(int) Math.min(BUCKETS - 1, Math.max(0, ticks))]++;
+        added(s);
+    }
+
+    // A command of this label was watched until watchTicks() and got no feedback that decided its result
+    void recordNoFeedback(String label) {
+        Stats s = statsOf(label);
+        s.none++;
+        added(s);
+    }
+
+    private Stats statsOf(String label) {
+        return stats.computeIfAbsent(label, key -> new Stats());
+    }
+
+    private void added(Stats s) {
+        if (++s.total >= MAX_SAMPLES) {
+            // Age out old behavior
+            s.none /= 2;
+            s.total = s.none;
+            for (int i = 0; i < BUCKETS; i++) {
+                s.ticks[i] /= 2;
+                s.total += s.ticks[i];
+            }
+        }
+        s.window = -1;
+        dirty = true;
+    }
+
+    private int computeWindow(Stats s) {
+        long rank = Math.max(1, (long) Math.ceil(s.total * PERCENTILE / 100.0));
+        long seen = s.none;
+        int bucket = 0;
+        while (seen < rank && bucket < BUCKETS) seen += s.ticks[bucket++];
+        // Feedback in the tick of the command (bucket 0) is in before the next tick, so wait one tick more than the bucket
+        return Math.max(minTicks, Math.min(maxTicks, bucket));
+    }
+
+    // --- Persistence ---
+
+    private void load() {
+        if (!file.exists()) return;
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        for (String label : yaml.getKeys(false)) {
+            Stats s = new Stats();
+            s.none = Math.max(0, yaml.getInt(label + ".none"));
+            s.total = s.none;
+            List<Integer> ticks = yaml.getIntegerList(label + ".ticks");
+            for (int i = 0; i < ticks.size() && i < BUCKETS; i++) {
+                s.ticks[i] = Math.max(0, ticks.get(i));
+                s.total += s.ticks[i];
+            }
+            if (s.total > 0) stats.put(label, s);
+        }
+    }
+
+    /**
+     * Saves the histograms if anything changed. The snapshot is taken here, on the main thread;
+     * the write happens on the given executor (a Runnable::run executor writes right away).
+     */
+    void save(Executor writer) {
+        if (!dirty) return;
+        dirty = false;
+        YamlConfiguration yaml = new YamlConfiguration();
+        stats.forEach((label, s) -> {
+            if (label.indexOf('.') >= 0) return; // would be read back as a nested section
+            yaml.set(label + ".none", s.none);
+            int last = BUCKETS;
+            while (last > 0 && s.ticks[last - 1] == 0) last--;
+            List<Integer> ticks = new ArrayList<>(last);
+            for (int i = 0; i < last; i++) ticks.add(s.ticks[i]);
+            yaml.set(label + ".ticks", ticks);
+        });
+        String content = "# Learned feedback times of commands, see feedback-window in config.yml. Delete to start over.\n"
+                + yaml.saveToString();
+        writer.execute(() -> write(content));
+    }
+
+    private void write(String content) {
+        // Write to a temp file and move it, a crash mid-write keeps the previous file
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) parent.mkdirs();
+            Files.writeString(temp.toPath(), content, StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to save " + file + ": " + e.getMessage());
+        }
+    }
+
+    int size() {
+        return stats.size();
+    }
+}
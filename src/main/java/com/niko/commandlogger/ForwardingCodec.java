@@ -0,0 +1,290 @@
+package com.niko.commandlogger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Wire format between forwarding servers and the collector.
+ *
+ * Every frame is [int length][byte type][payload]. A connection starts with a HELLO from the
+ * server (magic, version, server name, session id), followed by EVENTS frames. The collector
+ * answers with ACKs carrying the highest sequence number it has handed to delivery, so the
+ * server can resend what was not acknowledged after a reconnect.
+ *
+ * Numbers are varints (zigzag for coordinates), strings are a varint of length + 1 (0 for
+ * null) followed by UTF-8.
+ */
+final class ForwardingCodec {
+
+    static final int MAGIC = 0x43574C46; // "CWLF"
+    static final int VERSION = 1;
+    static final byte HELLO = 1;
+    static final byte EVENTS = 2;
+    static final byte ACK = 3;
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * A forwarded command with the player context only the server it came from can look up.
+     */
+    static final class ForwardedEvent {
+        final CommandEvent event;
+        final String discordMention;
+        final String group;
+
+        ForwardedEvent(CommandEvent event, String discordMention, String group) {
+            this.event = event;
+            this.discordMention = discordMention;
+            this.group = group;
+        }
+    }
+
+    private ForwardingCodec() {
+    }
+
+    // "host:port" or "unix:<path>"
+    static SocketAddress parseAddress(String address) throws IOException {
+        if (address.startsWith("unix:")) return UnixDomainSocketAddress.of(address.substring(5));
+        int colon = address.lastIndexOf(':');
+        try {
+            if (colon > 0) return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            // reported below
+        }
+        throw new IOException("Expected host:port or unix:<path>, got '" + address + "'");
+    }
+
+    // Reads straight from the channel. Channels.newInputStream would serialize reads with the writes of another thread.
+    static InputStream inputStream(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                return channel.read(ByteBuffer.wrap(bytes, offset, length));
+            }
+        };
+    }
+
+    static void writeFully(SocketChannel channel, byte[] frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        while (buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    // --- Writing ---
+
+    /**
+     * Reusable frame buffer. Write the payload, then send it with writeTo() or keep a copy with toFrame().
+     */
+    static final class FrameWriter extends ByteArrayOutputStream {
+
+        FrameWriter(byte type) {
+            super(256);
+            reset(type);
+        }
+
+        void reset(byte type) {
+            reset();
+            count = 4; // length, filled in by writeTo
+            write(type);
+        }
+
+        void writeTo(SocketChannel channel) throws IOException {
+            finish();
+            ByteBuffer buffer = ByteBuffer.wrap(buf, 0, count);
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+
+        // A copy of the finished frame, kept for resending after a reconnect
+        byte[] toFrame() {
+            finish();
+            return toByteArray();
+        }
+
+        private void finish() {
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+        }
+
+        void writeFixedInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeFixedLong(long value) {
+            writeFixedInt((int) (value >>> 32));
+            writeFixedInt((int) value);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigZag(int value) {
+            writeVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                write(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    static void writeHello(FrameWriter out, String serverName, long sessionId) {
+        out.reset(HELLO);
+        out.writeFixedInt(MAGIC);
+        out.write(VERSION);
+        out.writeString(serverName);
+        out.writeFixedLong(sessionId);
+    }
+
+    static void writeAck(FrameWriter out, long sequence) {
+        out.reset(ACK);
+        out.writeFixedLong(sequence);
+    }
+
+    // An EVENTS frame starts with the sequence number of its first event and the event count
+    static void startEvents(FrameWriter out, long firstSequence, int count) {
+        out.reset(EVENTS);
+        out.writeFixedLong(firstSequence);
+        out.writeVarLong(count);
+    }
+
+    static void writeEvent(FrameWriter out, CommandEvent event, String discordMention, String group) {
+        out.write(event.source.ordinal());
+        out.writeFixedLong(event.playerId.getMostSignificantBits());
+        out.writeFixedLong(event.playerId.getLeastSignificantBits());
+        out.writeString(event.playerName);
+        out.writeString(event.command);
+        out.writeString(event.resultKey);
+        out.writeString(event.world);
+        out.writeZigZag(event.x);
+        out.writeZigZag(event.y);
+        out.writeZigZag(event.z);
+        out.writeVarLong(event.timestamp);
+        out.writeVarLong(event.count);
+        out.writeVarLong(event.windowMillis);
+        out.writeString(discordMention);
+        out.writeString(group);
+    }
+
+    // --- Reading ---
+
+    /**
+     * Reads frames one at a time into a reused buffer.
+     */
+    static final class FrameReader {
+        private final DataInputStream in;
+        private byte[] frame = new byte[256];
+        private int position;
+        private int limit;
+
+        FrameReader(InputStream in) {
+            this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+        }
+
+        // Reads the next frame and returns its type, or -1 at the end of the stream
+        int next() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return -1;
+            }
+            if (length < 1 || length > MAX_FRAME_SIZE) throw new IOException("Invalid frame length " + length);
+            if (frame.length < length) frame = new byte[Math.max(length, frame.length * 2)];
+            in.readFully(frame, 0, length);
+            position = 1;
+            limit = length;
+            return frame[0];
+        }
+
+        int readByte() throws IOException {
+            if (position >= limit) throw new IOException("Truncated frame");
+            return frame[position++] & 0xFF;
+        }
+
+        int readFixedInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        long readFixedLong() throws IOException {
+            return ((long) readFixedInt() << 32) | (readFixedInt() & 0xFFFFFFFFL);
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readZigZag() throws IOException {
+            int value = (int) readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong() - 1;
+            if (length < 0) return null;
+            if (length > limit - position) throw new IOException("Truncated frame");
+            String value = new String(frame, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+
+        ForwardedEvent readEvent() throws IOException {
+            CommandSource[] sources = CommandSource.values();
+            int sourceIndex = readByte();
+            CommandSource source = sourceIndex < sources.length ? sources[sourceIndex] : CommandSource.OTHER;
+            UUID playerId = new UUID(readFixedLong(), readFixedLong());
+            String playerName = readString();
+            String command = readString();
+            String resultKey = readString();
+            String world = readString();
+            int x = readZigZag();
+            int y = readZigZag();
+            int z = readZigZag();
+            long timestamp = readVarLong();
+            int count = (int) readVarLong();
+            long windowMillis = readVarLong();
+            String discordMention = readString();
+            String group = readString();
+
+            CommandEvent event = new CommandEvent(source, playerId, playerName, command, resultKey, world, x, y, z, timestamp);
+            if (windowMillis > 0) event = event.summarize(count, windowMillis);
+            return new ForwardedEvent(event, discordMention, group);
+        }
+    }
+}
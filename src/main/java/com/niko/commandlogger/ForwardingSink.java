@@ -0,0 +1,308 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams finalized commands to a collector process (see the collector directory) instead of
+ * sending them to Discord, so one collector renders and delivers for a whole network and
+ * keeps one view of Discord's rate limits.
+ *
+ * accept() only queues the event. A single writer thread looks up the player context, batches
+ * events into frames and writes them to a persistent TCP or Unix domain socket. Frames stay in
+ * memory until the collector acknowledges them and are resent after a reconnect; the collector
+ * skips the events it has already seen.
+ */
+final class ForwardingSink implements CommandSink {
+
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30_000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final JavaPlugin plugin;
+    private final PlayerContextCache contextCache;
+    private final BlockingQueue<CommandEvent> queue;
+    private final ThreadFactory readerThreads = new DaemonThreadFactory("ForwardAck");
+    private final Thread writer;
+    // Random per start, so the collector can tell a restarted server's sequence numbers apart
+    private final long sessionId = ThreadLocalRandom.current().nextLong();
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private volatile String address;
+    private volatile String serverName;
+    private volatile int batchSize;
+    private volatile long lingerMillis;
+    private volatile int maxUnackedEvents;
+    private volatile boolean reconnect;
+    private volatile boolean running = true;
+    private volatile long acknowledged = -1; // highest sequence the collector confirmed, set by the reader thread
+
+    // Writer thread only
+    private final ArrayDeque<Frame> unacked = new ArrayDeque<>();
+    private volatile int unackedEvents;
+    private SocketChannel channel;
+    private long nextSequence;
+    private long reconnectDelayMillis;
+    private long reconnectAt;
+
+    /**
+     * An EVENTS frame kept until the collector acknowledged its last event.
+     */
+    private static final class Frame {
+        final long lastSequence;
+        final int events;
+        final byte[] bytes;
+        boolean written; // on the current connection
+
+        Frame(long lastSequence, int events, byte[] bytes) {
+            this.lastSequence = lastSequence;
+            this.events = events;
+            this.bytes = bytes;
+        }
+    }
+
+    ForwardingSink(JavaPlugin plugin, PlayerContextCache contextCache) {
+        this.plugin = plugin;
+        this.contextCache = contextCache;
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("forwarding");
+        this.queue = new ArrayBlockingQueue<>(Math.max(64, config != null ? config.getInt("queue-capacity", 10000) : 10000));
+        reload();
+
+        PluginMetrics.registerGauge("forward_queue_depth", queue::size);
+        PluginMetrics.registerGauge("forward_unacked", () -> unackedEvents);
+        PluginMetrics.registerGauge("forward_dropped_total", droppedEvents::sum);
+
+        this.writer = new DaemonThreadFactory("Forward").newThread(this::run);
+        writer.start();
+    }
+
+    @Override
+    public void reload() {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("forwarding");
+        String address = config != null ? config.getString("address", "127.0.0.1:25590") : "127.0.0.1:25590";
+        String serverName = config != null ? config.getString("server-name", "server") : "server";
+        batchSize = Math.max(1, config != null ? config.getInt("batch-size", 100) : 100);
+        lingerMillis = Math.max(0, config != null ? config.getLong("linger-ms", 50) : 50);
+        maxUnackedEvents = Math.max(1, config != null ? config.getInt("max-unacked", 50000) : 50000);
+
+        if (this.address != null && (!address.equals(this.address) || !serverName.equals(this.serverName))) {
+            reconnect = true;
+        }
+        this.address = address;
+        this.serverName = serverName;
+    }
+
+    // The collector decides where commands go
+    @Override
+    public boolean wants(String resultKey) {
+        return true;
+    }
+
+    @Override
+    public void accept(CommandEvent event) {
+        if (!queue.offer(event)) droppedEvents.increment();
+    }
+
+    // Sends what is still queued and waits for the collector to confirm it, at most forwarding.shutdown-timeout-ms
+    @Override
+    public void shutdown() {
+        running = false;
+        try {
+            writer.join(plugin.getConfig().getLong("forwarding.shutdown-timeout-ms", 3000) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Writer thread ---
+
+    private void run() {
+        List<CommandEvent> batch = new ArrayList<>();
+        ForwardingCodec.FrameWriter frame = new ForwardingCodec.FrameWriter(ForwardingCodec.EVENTS);
+        while (running) {
+            try {
+                CommandEvent first = queue.poll(250, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fillBatch(batch);
+                    remember(encode(batch, frame));
+                    batch.clear();
+                }
+                send();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Shutting down: everything left goes out without lingering
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plugin.getConfig().getLong("forwarding.shutdown-timeout-ms", 3000));
+        while (queue.drainTo(batch, batchSize) > 0) {
+            remember(encode(batch, frame));
+            batch.clear();
+        }
+        reconnectAt = System.nanoTime(); // one last attempt right away
+        while (!unacked.isEmpty() && System.nanoTime() < deadline) {
+            send();
+            if (channel == null) break;
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (unackedEvents > 0) {
+            plugin.getLogger().warning(unackedEvents + " commands were not confirmed by the collector before shutdown and were not forwarded.");
+        }
+        disconnect();
+    }
+
+    // Waits up to linger-ms for a full batch
+    private void fillBatch(List<CommandEvent> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) continue;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return;
+            CommandEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) return;
+            batch.add(next);
+        }
+    }
+
+    private Frame encode(List<CommandEvent> batch, ForwardingCodec.FrameWriter frame) {
+        ForwardingCodec.startEvents(frame, nextSequence, batch.size());
+        for (CommandEvent event : batch) {
+            // Discord links and groups are only known here, the collector gets them with the event
+            PlayerContextCache.PlayerContext context = event.source == CommandSource.PLAYER
+                    ? contextCache.get(event.playerId) : PlayerContextCache.PlayerContext.NONE;
+            ForwardingCodec.writeEvent(frame, event, context.discordMention, context.group);
+        }
+        nextSequence += batch.size();
+        return new Frame(nextSequence - 1, batch.size(), frame.toFrame());
+    }
+
+    // Keeps the frame for resending, dropping the oldest ones while the collector is away for too long
+    private void remember(Frame frame) {
+        unacked.addLast(frame);
+        int events = unackedEvents + frame.events;
+        while (events > maxUnackedEvents && unacked.size() > 1) {
+            Frame oldest = unacked.pollFirst();
+            events -= oldest.events;
+            droppedEvents.add(oldest.events);
+        }
+        unackedEvents = events;
+    }
+
+    // Makes sure the collector has every unacknowledged frame, (re)connecting if needed
+    private void send() {
+        long acknowledged = this.acknowledged;
+        int events = unackedEvents;
+        while (!unacked.isEmpty() && unacked.peekFirst().lastSequence <= acknowledged) {
+            events -= unacked.pollFirst().events;
+        }
+        unackedEvents = events;
+
+        if (reconnect || (channel != null && !channel.isOpen())) {
+            // Moved, or closed by the reader thread because the collector went away
+            reconnect = false;
+            disconnect();
+        }
+        if (unacked.isEmpty()) return;
+        if (channel == null && !connect()) return;
+
+        try {
+            for (Frame frame : unacked) {
+                if (frame.written) continue;
+                ForwardingCodec.writeFully(channel, frame.bytes);
+                frame.written = true;
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Lost the connection to the collector at " + address + ": " + e.getMessage());
+            disconnect();
+        }
+    }
+
+    private boolean connect() {
+        long now = System.nanoTime();
+        if (now - reconnectAt < 0) return false;
+
+        SocketChannel channel = null;
+        try {
+            SocketAddress target = ForwardingCodec.parseAddress(address);
+            if (target instanceof InetSocketAddress) {
+                channel = SocketChannel.open();
+                channel.socket().connect(target, CONNECT_TIMEOUT_MILLIS);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            } else {
+                channel = SocketChannel.open(target);
+            }
+
+            ForwardingCodec.FrameWriter hello = new ForwardingCodec.FrameWriter(ForwardingCodec.HELLO);
+            ForwardingCodec.writeHello(hello, serverName, sessionId);
+            hello.writeTo(channel);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            reconnectDelayMillis = Math.min(MAX_RECONNECT_DELAY_MILLIS, Math.max(500, reconnectDelayMillis * 2));
+            reconnectAt = now + TimeUnit.MILLISECONDS.toNanos(reconnectDelayMillis);
+            plugin.getLogger().warning("Cannot reach the collector at " + address + " (" + e.getMessage()
+                    + "), retrying in " + reconnectDelayMillis + "ms.");
+            return false;
+        }
+
+        if (reconnectDelayMillis > 0) plugin.getLogger().info("Reconnected to the collector at " + address + ".");
+        reconnectDelayMillis = 0;
+        this.channel = channel;
+        // Everything unacknowledged goes out again, the collector skips what it already has
+        for (Frame frame : unacked) frame.written = false;
+
+        SocketChannel connected = channel;
+        readerThreads.newThread(() -> readAcks(connected)).start();
+        return true;
+    }
+
+    private void disconnect() {
+        closeQuietly(channel);
+        channel = null;
+    }
+
+    // Reader thread of one connection
+    private void readAcks(SocketChannel channel) {
+        ForwardingCodec.FrameReader frames = new ForwardingCodec.FrameReader(ForwardingCodec.inputStream(channel));
+        try {
+            int type;
+            while ((type = frames.next()) >= 0) {
+                if (type == ForwardingCodec.ACK) {
+                    long sequence = frames.readFixedLong();
+                    if (sequence > acknowledged) acknowledged = sequence;
+                }
+            }
+        } catch (IOException e) {
+            // Closed by us or by the collector, the writer notices on its next write
+        }
+        closeQuietly(channel);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.niko.commandlogger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming JSON writer that encodes straight to UTF-8 into a reusable byte buffer.
+ *
+ * Strings are escaped as RFC 8259 requires: quote, backslash and every control character.
+ * Unpaired surrogates become U+FFFD, so the output is always valid UTF-8. A string value can
+ * also be written in pieces with a limit in code points (beginText/text/endText); when it is
+ * too long it is cut on a code point boundary and ends with "…", which is how Discord's embed
+ * limits are kept. The buffer is handed to the spool and the HTTP client as it is, no String
+ * is built in between.
+ */
+final class JsonWriter {
+
+    // Discord's limits, in characters
+    static final int MAX_TITLE = 256;
+    static final int MAX_DESCRIPTION = 4096;
+    static final int MAX_FOOTER = 2048;
+    static final int MAX_AUTHOR = 256;
+    static final int MAX_EMBED_TOTAL = 6000; // per message, summed over all embeds
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Larger buffers are not kept after a reset, one huge embed should not pin memory forever
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final ThreadLocal<JsonWriter> LOCAL = ThreadLocal.withInitial(JsonWriter::new);
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+
+    // The limited text being written, see beginText
+    private int remaining = Integer.MAX_VALUE;
+    private int written;
+    private int lastCodePointStart;
+    private boolean truncated;
+
+    /**
+     * The calling thread's writer, reset. Only for code that is done with it before it
+     * could be asked for again on the same thread.
+     */
+    static JsonWriter local() {
+        JsonWriter writer = LOCAL.get();
+        writer.reset();
+        return writer;
+    }
+
+    void reset() {
+        length = 0;
+        remaining = Integer.MAX_VALUE;
+        truncated = false;
+        if (buffer.length > MAX_RETAINED_CAPACITY) buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    // Rolls back to an earlier length, e.g. to leave out a field that turned out empty
+    void setLength(int length) {
+        this.length = length;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    // --- Structure ---
+
+    // Already encoded JSON, e.g. a fragment prepared by encode() or a previously written value
+    JsonWriter raw(byte[] json) {
+        return raw(json, 0, json.length);
+    }
+
+    JsonWriter raw(byte[] json, int offset, int count) {
+        ensure(count);
+        System.arraycopy(json, offset, buffer, length, count);
+        length += count;
+        return this;
+    }
+
+    // JSON syntax and other text that is known to be ASCII and needs no escaping
+    JsonWriter raw(String ascii) {
+        int count = ascii.length();
+        ensure(count);
+        for (int i = 0; i < count; i++) buffer[length++] = (byte) ascii.charAt(i);
+        return this;
+    }
+
+    JsonWriter number(long value) {
+        if (value == Long.MIN_VALUE) return raw(Long.toString(value));
+        ensure(20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) digits++;
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    // A complete string value with quotes, or null
+    JsonWriter string(CharSequence value) {
+        if (value == null) return raw("null");
+        ensure(1);
+        buffer[length++] = '"';
+        beginText(Integer.MAX_VALUE);
+        text(value);
+        endText();
+        ensure(1);
+        buffer[length++] = '"';
+        return this;
+    }
+
+    // --- Limited text ---
+
+    /**
+     * Starts the content of a string value; the caller writes the quotes around it. At most
+     * maxCodePoints are written, if more follow the last one is replaced with "…".
+     */
+    void beginText(int maxCodePoints) {
+        remaining = Math.max(0, maxCodePoints);
+        written = 0;
+        lastCodePointStart = length;
+        truncated = false;
+    }
+
+    // Escapes and appends text to the current string
+    void text(CharSequence text) {
+        if (text == null) return;
+        for (int i = 0, count = text.length(); i < count && !truncated; i++) {
+            char c = text.charAt(i);
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = 0xFFFD;
+            }
+            codePoint(codePoint);
+        }
+    }
+
+    // Appends a number to the current string
+    void text(long value) {
+        if (value < 0) {
+            codePoint('-');
+            if (value == Long.MIN_VALUE) {
+                text(Long.toString(value).substring(1));
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) divisor *= 10;
+        for (; divisor > 0 && !truncated; divisor /= 10) codePoint((int) ('0' + value / divisor % 10));
+    }
+
+    /**
+     * Appends text prepared by encode(): the escaped bytes and the number of code points
+     * they stand for. Falls back to escaping the original when it would hit the limit.
+     */
+    void text(byte[] encoded, int codePoints, CharSequence original) {
+        if (truncated) return;
+        if (codePoints < remaining) {
+            raw(encoded);
+            remaining -= codePoints;
+            written += codePoints; // at least one more code point fits, so the ellipsis never replaces part of a literal
+        } else {
+            text(original);
+        }
+    }
+
+    // Ends the current string and returns how many code points it has
+    int endText() {
+        remaining = Integer.MAX_VALUE;
+        truncated = false;
+        return written;
+    }
+
+    private void codePoint(int codePoint) {
+        if (remaining == 0) {
+            // One too many: the last code point makes room for the ellipsis
+            truncated = true;
+            if (written == 0) return;
+            length = lastCodePointStart;
+            writeUtf8('…');
+            return;
+        }
+        remaining--;
+        written++;
+        lastCodePointStart = length;
+        switch (codePoint) {
+            case '"' -> escape('"');
+            case '\\' -> escape('\\');
+            case '\n' -> escape('n');
+            case '\r' -> escape('r');
+            case '\t' -> escape('t');
+            case '\b' -> escape('b');
+            case '\f' -> escape('f');
+            default -> {
+                if (codePoint < 0x20) {
+                    ensure(6);
+                    buffer[length++] = '\\';
+                    buffer[length++] = 'u';
+                    buffer[length++] = '0';
+                    buffer[length++] = '0';
+                    buffer[length++] = HEX[codePoint >>> 4];
+                    buffer[length++] = HEX[codePoint & 0xF];
+                } else {
+                    writeUtf8(codePoint);
+                }
+            }
+        }
+    }
+
+    private void escape(char c) {
+        ensure(2);
+        buffer[length++] = '\\';
+        buffer[length++] = (byte) c;
+    }
+
+    private void writeUtf8(int codePoint) {
+        ensure(4);
+        if (codePoint < 0x80) {
+            buffer[length++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            buffer[length++] = (byte) (0xC0 | (codePoint >>> 6));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            buffer[length++] = (byte) (0xE0 | (codePoint >>> 12));
+            buffer[length++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            buffer[length++] = (byte) (0xF0 | (codePoint >>> 18));
+            buffer[length++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+            buffer[length++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+            buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length + extra, buffer.length * 2));
+        }
+    }
+
+    // --- Preparing fragments ---
+
+    // The escaped UTF-8 of text (without quotes), for literals that are written many times
+    static byte[] encode(CharSequence text) {
+        JsonWriter writer = new JsonWriter();
+        writer.beginText(Integer.MAX_VALUE);
+        writer.text(text);
+        writer.endText();
+        return writer.toByteArray();
+    }
+
+    // What Discord counts as the length of text
+    static int codePoints(CharSequence text) {
+        return text == null ? 0 : Character.codePointCount(text, 0, text.length());
+    }
+}
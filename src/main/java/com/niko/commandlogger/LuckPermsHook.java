@@ -0,0 +1,56 @@
+package com.niko.commandlogger;
+
+import net.luckperms.api.LuckPerms;
+import net.luckperms.api.LuckPermsProvider;
+import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.user.UserDataRecalculateEvent;
+import net.luckperms.api.model.user.User;
+import net.luckperms.api.node.types.InheritanceNode;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Everything that touches the LuckPerms API. Only loaded when LuckPerms is installed.
+ */
+final class LuckPermsHook {
+
+    private final Plugin plugin;
+    private final LuckPerms api;
+    private EventSubscription<UserDataRecalculateEvent> subscription;
+
+    LuckPermsHook(Plugin plugin) {
+        this.plugin = plugin;
+        this.api = LuckPermsProvider.get();
+    }
+
+    // Calls the listener with the player's UUID whenever their permission data changes
+    void subscribe(Consumer<UUID> onChange) {
+        subscription = api.getEventBus().subscribe(plugin, UserDataRecalculateEvent.class,
+                event -> onChange.accept(event.getUser().getUniqueId()));
+    }
+
+    void unsubscribe() {
+        if (subscription != null) subscription.close();
+    }
+
+    String getPrimaryGroup(UUID playerId) {
+        try {
+            User user = api.getUserManager().getUser(playerId);
+            if (user == null) return "No user data";
+
+            String primaryGroup = user.getPrimaryGroup();
+            // CORRECTED LOGIC: Only return primaryGroup if it is NOT null AND NOT empty.
+            if (primaryGroup != null && !primaryGroup.isEmpty()) return primaryGroup;
+
+            return user.getNodes().stream()
+                    .filter(node -> node instanceof InheritanceNode)
+                    .map(node -> ((InheritanceNode) node).getGroupName())
+                    .findFirst().orElse("No group");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to get LuckPerms primary group: " + e.getMessage());
+            return "Error fetching group";
+        }
+    }
+}
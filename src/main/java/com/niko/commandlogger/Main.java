@@ -7,10 +7,23 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 public class Main extends JavaPlugin implements CommandExecutor {
 
+    private static final int SEARCH_RESULT_LIMIT = 20;
+
     private static Main instance;
+    private ExecutorService workers;
+    private PlayerContextCache contextCache;
     private WebhookSender webhookSender;
+    private AuditLogSink auditLog;
+    private List<CommandSink> sinks = List.of();
+    private CommandWebhookListener commandListener;
+    private MetricsExporter metricsExporter;
 
     @Override
     public void onEnable() {
@@ -25,12 +38,28 @@ public class Main extends JavaPlugin implements CommandExecutor {
         }
 
         ProtocolManager protocolManager = ProtocolLibrary.getProtocolManager();
-        this.webhookSender = new WebhookSender(this);
+        // Worker threads for everything that does not need the main thread (lookups, rendering)
+        this.workers = Executors.newFixedThreadPool(2, new DaemonThreadFactory("Worker"));
+        this.contextCache = new PlayerContextCache(this, workers);
+        getServer().getPluginManager().registerEvents(this.contextCache, this);
+        CommandSink delivery;
+        if (getConfig().getBoolean("forwarding.enabled", false)) {
+            // A collector renders and delivers for the whole network
+            delivery = new ForwardingSink(this, this.contextCache);
+        } else {
+            this.webhookSender = new WebhookSender(this, this.contextCache, this.workers);
+            delivery = this.webhookSender;
+        }
+        this.auditLog = new AuditLogSink(this);
+        // Spam is only collapsed for Discord, the audit log keeps every command
+        this.sinks = List.of(new AggregationStage(this, delivery), this.auditLog);
 
         // Register listener
-        getServer().getPluginManager().registerEvents(
-                new CommandWebhookListener(this, protocolManager, this.webhookSender), this
-        );
+        this.commandListener = new CommandWebhookListener(this, protocolManager, this.sinks);
+        getServer().getPluginManager().registerEvents(this.commandListener, this);
+
+        this.metricsExporter = new MetricsExporter(getDataFolder(), getLogger());
+        this.metricsExporter.configure(getConfig().getConfigurationSection("metrics"));
 
         // Register /commandwebhooklogger
         if (getCommand("commandwebhooklogger") != null) {
@@ -44,6 +73,31 @@ public class Main extends JavaPlugin implements CommandExecutor {
 
     @Override
     public void onDisable() {
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+        }
+        if (commandListener != null) {
+            commandListener.flushPending();
+        }
+        for (CommandSink sink : sinks) {
+            sink.flush();
+        }
+        if (contextCache != null) {
+            // Stop reacting to LuckPerms/DiscordSRV events before the workers go away
+            contextCache.shutdown();
+        }
+        if (workers != null) {
+            // Let the commands flushed above get rendered and queued before delivery shuts down
+            workers.shutdown();
+            try {
+                workers.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (CommandSink sink : sinks) {
+            sink.shutdown();
+        }
         getLogger().info("CommandWebhookLogger disabled!");
     }
 
@@ -55,7 +109,7 @@ public class Main extends JavaPlugin implements CommandExecutor {
 
         // No args → show usage
         if (args.length == 0) {
-            sender.sendMessage("§eUsage: §6/commandwebhooklogger reload");
+            sender.sendMessage("§eUsage: §6/commandwebhooklogger <reload|stats|search>");
             return true;
         }
 
@@ -68,14 +122,74 @@ public class Main extends JavaPlugin implements CommandExecutor {
             }
 
             reloadConfig();
+            for (CommandSink sink : sinks) {
+                sink.reload();
+            }
+            commandListener.reload();
+            metricsExporter.configure(getConfig().getConfigurationSection("metrics"));
             sender.sendMessage("§aCommandWebhookLogger configuration reloaded successfully!");
             getLogger().info(sender.getName() + " reloaded the configuration.");
 
             return true;
         }
 
+        // /commandwebhooklogger stats
+        if (args[0].equalsIgnoreCase("stats")) {
+
+            if (!sender.hasPermission("commandwebhooklogger.stats")) {
+                sender.sendMessage("§cYou do not have permission to view the statistics.");
+                return true;
+            }
+
+            sender.sendMessage("§eCommandWebhookLogger statistics:");
+            for (String line : PluginMetrics.describe()) {
+                sender.sendMessage(line);
+            }
+
+            return true;
+        }
+
+        // /commandwebhooklogger search <since> [until] [player]
+        if (args[0].equalsIgnoreCase("search")) {
+
+            if (!sender.hasPermission("commandwebhooklogger.search")) {
+                sender.sendMessage("§cYou do not have permission to search the audit log.");
+                return true;
+            }
+
+            long since = args.length >= 2 ? AuditLogSink.parseDuration(args[1]) : -1;
+            long until = 0;
+            String player = null;
+            if (args.length == 3) {
+                // A duration ends the range, anything else is a player
+                long parsed = AuditLogSink.parseDuration(args[2]);
+                if (parsed > 0) until = parsed;
+                else player = args[2];
+            } else if (args.length == 4) {
+                until = AuditLogSink.parseDuration(args[2]);
+                player = args[3];
+            }
+            if (since < 0 || until < 0 || until >= since || args.length > 4) {
+                sender.sendMessage("§eUsage: §6/commandwebhooklogger search <since> [until] [player] §7(e.g. 7d, or 12h 2h for 12 to 2 hours ago)");
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            long from = now - since;
+            long to = now - until;
+            String playerFilter = player;
+
+            // Reading (and decompressing) log files can take a moment, keep it off the main thread
+            sender.sendMessage("§7Searching the audit log...");
+            getServer().getScheduler().runTaskAsynchronously(this, () -> {
+                List<String> lines = auditLog.search(from, to, playerFilter, SEARCH_RESULT_LIMIT);
+                getServer().getScheduler().runTask(this, () -> lines.forEach(sender::sendMessage));
+            });
+
+            return true;
+        }
+
         // Unknown subcommand
-        sender.sendMessage("§eUnknown subcommand. Usage: §6/commandwebhooklogger reload");
+        sender.sendMessage("§eUnknown subcommand. Usage: §6/commandwebhooklogger <reload|stats|search>");
         return true;
     }
 
@@ -0,0 +1,100 @@
+package com.niko.commandlogger;
+
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Optional Prometheus export of {@link PluginMetrics}: a text file for node_exporter's
+ * textfile collector and/or a small /metrics endpoint. Both are off by default.
+ */
+final class MetricsExporter {
+
+    private final File dataFolder;
+    private final Logger logger;
+    private ScheduledExecutorService fileWriter;
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+
+    MetricsExporter(File dataFolder, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+    }
+
+    // (Re)starts the exporters from the "metrics" section, called on enable and reload
+    synchronized void configure(ConfigurationSection metrics) {
+        stop();
+        if (metrics == null) return;
+
+        String exportFile = metrics.getString("export-file", "");
+        if (exportFile != null && !exportFile.isEmpty()) {
+            File target = new File(exportFile).isAbsolute() ? new File(exportFile) : new File(dataFolder, exportFile);
+            long interval = Math.max(1, metrics.getLong("export-interval-seconds", 15));
+            fileWriter = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Metrics"));
+            fileWriter.scheduleAtFixedRate(() -> writeFile(target), interval, interval, TimeUnit.SECONDS);
+        }
+
+        int port = metrics.getInt("http-port", 0);
+        if (port > 0) {
+            String bind = metrics.getString("http-bind", "127.0.0.1");
+            try {
+                httpServer = HttpServer.create(new InetSocketAddress(bind, port), 0);
+                httpServer.createContext("/metrics", exchange -> {
+                    byte[] body = PluginMetrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                });
+                httpExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("MetricsHttp"));
+                httpServer.setExecutor(httpExecutor);
+                httpServer.start();
+                logger.info("Serving metrics on http://" + bind + ":" + port + "/metrics");
+            } catch (IOException e) {
+                logger.warning("Failed to start the metrics endpoint on " + bind + ":" + port + ": " + e.getMessage());
+                httpServer = null;
+            }
+        }
+    }
+
+    synchronized void stop() {
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+            fileWriter = null;
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+            httpExecutor = null;
+        }
+    }
+
+    private void writeFile(File target) {
+        // Write to a temp file and move it, so scrapers never see a half written file
+        File temp = new File(target.getPath() + ".tmp");
+        try {
+            File parent = target.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) parent.mkdirs();
+            Files.writeString(temp.toPath(), PluginMetrics.toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to write metrics to " + target + ": " + e.getMessage());
+        }
+    }
+}
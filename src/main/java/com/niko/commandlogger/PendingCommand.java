@@ -0,0 +1,81 @@
+package com.niko.commandlogger;
+
+import org.bukkit.entity.Player;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A command that was typed but not logged yet.
+ *
+ * The result starts out as PENDING and is decided exactly once, either by the packet
+ * listener on a netty thread or by the fallback check on the main thread. The CAS in
+ * {@link #decide(Result)} publishes the result safely across those threads and makes
+ * sure a late packet can never overwrite a result that was already logged.
+ *
+ * A command the fallback decided may stay watched for a while after it was logged, so
+ * feedback that only arrives then is still seen by {@link FeedbackWindows}.
+ */
+final class PendingCommand extends TickWheel.Entry {
+
+    private static final VarHandle RESULT;
+    private static final VarHandle WATCHED;
+
+    static {
+        try {
+            RESULT = MethodHandles.lookup().findVarHandle(PendingCommand.class, "result", Result.class);
+            WATCHED = MethodHandles.lookup().findVarHandle(PendingCommand.class, "watched", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final Player player;
+    final String command;
+    final long sequence; // per player, increases by one for every command
+    final String label;  // name of the command for FeedbackWindows, null if the server does not know it
+    final long tick;     // server tick the command was typed in
+
+    private volatile Result result = Result.PENDING; // Initial state
+    private volatile boolean watched;
+    long feedbackTick;  // tick of the deciding packet, written before the command is handed to the main thread
+    boolean finalized;  // main thread only
+    boolean released;   // main thread only, removed from the ring and disarmed
+
+    PendingCommand(Player player, String command, long sequence, String label, long tick) {
+        this.player = player;
+        this.command = command;
+        this.sequence = sequence;
+        this.label = label;
+        this.tick = tick;
+    }
+
+    Result getResult() {
+        return result;
+    }
+
+    boolean isPending() {
+        return result == Result.PENDING;
+    }
+
+    // Sets the result if it is still PENDING. Returns false if it was decided before.
+    boolean decide(Result result) {
+        return RESULT.compareAndSet(this, Result.PENDING, result);
+    }
+
+    // Main thread only. Keeps watching for feedback after the command was logged.
+    void watch() {
+        watched = true;
+    }
+
+    boolean isWatched() {
+        return watched;
+    }
+
+    // Stops watching. Returns false if it was not watched or someone else stopped it first.
+    boolean unwatch() {
+        return WATCHED.compareAndSet(this, true, false);
+    }
+
+    enum Result { PENDING, EXECUTED, NO_PERMISSION, UNKNOWN }
+}
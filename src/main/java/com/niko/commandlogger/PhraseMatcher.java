@@ -0,0 +1,251 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Case-insensitive Aho-Corasick automaton over the feedback phrases of every result category.
+ *
+ * All phrases are matched in one left-to-right pass over the message, without lower-casing
+ * or copying it, and legacy color codes (a section sign plus one character) are skipped on
+ * the fly. Categories are ordered by priority: index 0 wins over index 1 and so on, so a
+ * message containing both a "no permission" and an "unknown command" phrase is still
+ * classified as no-permission, like the old chain of contains() checks did.
+ */
+final class PhraseMatcher {
+
+    static final int NO_MATCH = -1;
+
+    private static final int ROOT = 0;
+    private static final char COLOR_CHAR = '§';
+
+    // Goto function as an open addressing table: key = (node << 16) | char, value = next node
+    private final long[] transitionKeys;
+    private final int[] transitionTargets;
+    private final int transitionMask;
+
+    private final int[] fail;
+    private final int[] output; // best (lowest) category matched when reaching a node, or NO_MATCH
+    private final ThreadLocal<Scan> scans = ThreadLocal.withInitial(() -> new Scan(this));
+
+    private PhraseMatcher(List<Map<Character, Integer>> children, List<Integer> terminal) {
+        int nodes = children.size();
+        int edges = 0;
+        for (Map<Character, Integer> map : children) edges += map.size();
+
+        int capacity = Integer.highestOneBit(Math.max(4, edges * 2 - 1)) << 1;
+        this.transitionKeys = new long[capacity];
+        this.transitionTargets = new int[capacity];
+        this.transitionMask = capacity - 1;
+        Arrays.fill(transitionKeys, -1L);
+
+        for (int node = 0; node < nodes; node++) {
+            for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                long key = key(node, edge.getKey());
+                int slot = slot(key);
+                while (transitionKeys[slot] != -1L) slot = (slot + 1) & transitionMask;
+                transitionKeys[slot] = key;
+                transitionTargets[slot] = edge.getValue();
+            }
+        }
+
+        // Breadth-first pass to compute failure links and merge outputs along them
+        this.fail = new int[nodes];
+        this.output = new int[nodes];
+        for (int node = 0; node < nodes; node++) output[node] = terminal.get(node);
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : children.get(ROOT).values()) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                int child = edge.getValue();
+                int state = fail[node];
+                while (state != ROOT && next(state, edge.getKey()) < 0) state = fail[state];
+                int target = next(state, edge.getKey());
+                fail[child] = target >= 0 && target != child ? target : ROOT;
+                output[child] = best(output[child], output[fail[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Builds a matcher from lists of phrases, one list per category in priority order.
+     */
+    static PhraseMatcher compile(List<List<String>> phrasesByCategory) {
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        children.add(new HashMap<>());
+        terminal.add(NO_MATCH);
+
+        for (int category = 0; category < phrasesByCategory.size(); category++) {
+            for (String phrase : phrasesByCategory.get(category)) {
+                if (phrase == null || phrase.isEmpty()) continue;
+
+                int node = ROOT;
+                for (int i = 0; i < phrase.length(); i++) {
+                    char c = fold(phrase.charAt(i));
+                    Integer child = children.get(node).get(c);
+                    if (child == null) {
+                        child = children.size();
+                        children.add(new HashMap<>());
+                        terminal.add(NO_MATCH);
+                        children.get(node).put(c, child);
+                    }
+                    node = child;
+                }
+                terminal.set(node, best(terminal.get(node), category));
+            }
+        }
+        return new PhraseMatcher(children, terminal);
+    }
+
+    /**
+     * Reads the phrases of each category from a section such as "feedback-phrases".
+     * A category is either a plain list or a section of lists per locale (en, de, ...).
+     */
+    static PhraseMatcher fromConfig(ConfigurationSection section, String... categories) {
+        List<List<String>> phrases = new ArrayList<>();
+        for (String category : categories) {
+            List<String> list = new ArrayList<>();
+            if (section != null) {
+                if (section.isList(category)) {
+                    list.addAll(section.getStringList(category));
+                } else {
+                    ConfigurationSection locales = section.getConfigurationSection(category);
+                    if (locales != null) {
+                        for (String locale : locales.getKeys(false)) {
+                            list.addAll(locales.getStringList(locale));
+                        }
+                    }
+                }
+            }
+            phrases.add(list);
+        }
+        return compile(phrases);
+    }
+
+    // Returns this thread's scan state, reset and ready for a new message
+    Scan startScan() {
+        Scan scan = scans.get();
+        scan.reset();
+        return scan;
+    }
+
+    // Convenience for a single string, returns the matched category or NO_MATCH
+    int match(CharSequence text) {
+        Scan scan = startScan();
+        scan.feed(text);
+        return scan.result();
+    }
+
+    private int next(int node, char c) {
+        long key = key(node, c);
+        int slot = slot(key);
+        long stored;
+        while ((stored = transitionKeys[slot]) != -1L) {
+            if (stored == key) return transitionTargets[slot];
+            slot = (slot + 1) & transitionMask;
+        }
+        return -1;
+    }
+
+    private static long key(int node, char c) {
+        return ((long) node << 16) | c;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & transitionMask;
+    }
+
+    private static char fold(char c) {
+        if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        return Character.toLowerCase(c);
+    }
+
+    private static int best(int a, int b) {
+        if (a == NO_MATCH) return b;
+        if (b == NO_MATCH) return a;
+        return Math.min(a, b);
+    }
+
+    /**
+     * Matching state for one message. Text can be fed in several pieces (it is a
+     * {@link ChatTextExtractor.TextSink}), phrases spanning two pieces still match.
+     */
+    static final class Scan implements ChatTextExtractor.TextSink {
+        private final PhraseMatcher matcher;
+        private int state;
+        private boolean afterColorChar;
+        private int result;
+        private int charsSeen;
+
+        private Scan(PhraseMatcher matcher) {
+            this.matcher = matcher;
+        }
+
+        void reset() {
+            state = ROOT;
+            afterColorChar = false;
+            result = NO_MATCH;
+            charsSeen = 0;
+        }
+
+        @Override
+        public boolean accept(String text) {
+            return feed(text);
+        }
+
+        // Returns true once the highest priority category matched, nothing can beat it anymore
+        boolean feed(CharSequence text) {
+            if (text == null) return result == 0;
+            charsSeen += text.length();
+
+            PhraseMatcher m = matcher;
+            int node = state;
+            for (int i = 0, length = text.length(); i < length; i++) {
+                char c = text.charAt(i);
+                if (afterColorChar) {
+                    afterColorChar = false;
+                    continue;
+                }
+                if (c == COLOR_CHAR) {
+                    afterColorChar = true;
+                    continue;
+                }
+
+                c = fold(c);
+                int target;
+                while ((target = m.next(node, c)) < 0 && node != ROOT) node = m.fail[node];
+                node = target < 0 ? ROOT : target;
+
+                int out = m.output[node];
+                if (out != NO_MATCH) {
+                    result = best(result, out);
+                    if (result == 0) break;
+                }
+            }
+            state = node;
+            return result == 0;
+        }
+
+        int result() {
+            return result;
+        }
+
+        boolean sawText() {
+            return charsSeen > 0;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.niko.commandlogger;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Caches the Discord link and LuckPerms primary group of online players.
+ *
+ * Entries are loaded on a worker thread when a player joins and reloaded whenever
+ * LuckPerms recalculates the player's data or DiscordSRV links/unlinks the account,
+ * so logging a command never has to call into either plugin on the main thread.
+ */
+final class PlayerContextCache implements Listener {
+
+    private final JavaPlugin plugin;
+    private final Executor executor;
+    private final Map<UUID, PlayerContext> contexts = new ConcurrentHashMap<>();
+    private LuckPermsHook luckPerms;
+    private DiscordSrvHook discordSrv;
+
+    PlayerContextCache(JavaPlugin plugin, Executor executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+
+        // Both are soft dependencies, their classes must not be touched if they are missing
+        if (plugin.getServer().getPluginManager().getPlugin("LuckPerms") != null) {
+            try {
+                luckPerms = new LuckPermsHook(plugin);
+                luckPerms.subscribe(this::invalidate);
+            } catch (Exception | LinkageError e) {
+                plugin.getLogger().warning("Failed to hook into LuckPerms: " + e.getMessage());
+                luckPerms = null;
+            }
+        }
+        if (plugin.getServer().getPluginManager().getPlugin("DiscordSRV") != null) {
+            try {
+                discordSrv = new DiscordSrvHook(this::invalidate);
+                discordSrv.subscribe();
+            } catch (Exception | LinkageError e) {
+                plugin.getLogger().warning("Failed to hook into DiscordSRV: " + e.getMessage());
+                discordSrv = null;
+            }
+        }
+
+        // Players who were online before the plugin was enabled (e.g. after a plugin reload)
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            loadInBackground(player);
+        }
+    }
+
+    /**
+     * Returns the cached context, or loads it on the calling thread if it is missing (the
+     * join lookup has not finished yet, or the player already quit). Only onJoin() adds
+     * entries, so a late command of a player who left never leaves one behind. Never call
+     * this from the main thread.
+     */
+    PlayerContext get(UUID playerId) {
+        PlayerContext context = contexts.get(playerId);
+        return context != null ? context : load(playerId);
+    }
+
+    // Reloads the player's context in the background, if they are still cached
+    void invalidate(UUID playerId) {
+        if (!contexts.containsKey(playerId)) return;
+        executor.execute(() -> {
+            PlayerContext context = load(playerId);
+            // Only store it if the player did not quit in the meantime
+            contexts.computeIfPresent(playerId, (id, old) -> context);
+        });
+    }
+
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        loadInBackground(event.getPlayer());
+    }
+
+    private void loadInBackground(Player player) {
+        UUID playerId = player.getUniqueId();
+        executor.execute(() -> {
+            contexts.put(playerId, load(playerId));
+            // Quit before the lookup finished, don't leave the entry behind
+            if (!player.isOnline()) contexts.remove(playerId);
+        });
+    }
+
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        contexts.remove(event.getPlayer().getUniqueId());
+    }
+
+    void shutdown() {
+        if (luckPerms != null) luckPerms.unsubscribe();
+        if (discordSrv != null) discordSrv.unsubscribe();
+        contexts.clear();
+    }
+
+    private PlayerContext load(UUID playerId) {
+        String discordId = null;
+        if (discordSrv != null) {
+            try {
+                discordId = discordSrv.getDiscordId(playerId);
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to get DiscordSRV link: " + e.getMessage());
+            }
+        }
+        String group = luckPerms != null ? luckPerms.getPrimaryGroup(playerId) : "No group";
+        return new PlayerContext(discordId, group);
+    }
+
+    static final class PlayerContext {
+        // For the console, command blocks and other senders that are no player
+        static final PlayerContext NONE = new PlayerContext(null, "No group");
+
+        final String discordMention;
+        final String group;
+
+        PlayerContext(String discordId, String group) {
+            this.discordMention = discordId != null ? "<@" + discordId + ">" : "Not linked";
+            this.group = group;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.niko.commandlogger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms for the plugin's hot paths.
+ *
+ * Everything here is lock-free (LongAdder / atomic arrays), so the packet listener and the
+ * main thread can record unconditionally. Read through /commandwebhooklogger stats and,
+ * if enabled, the Prometheus exporter.
+ */
+final class PluginMetrics {
+
+    // Packet listener
+    static final LongAdder PACKETS_INSPECTED = new LongAdder();
+    static final LongAdder PACKETS_MATCHED = new LongAdder();
+    static final LatencyHistogram PACKET_TIME = new LatencyHistogram();
+
+    // Main thread
+    static final LongAdder COMMANDS = new LongAdder();
+    static final LatencyHistogram COMMAND_TIME = new LatencyHistogram();
+    static final LatencyHistogram FINALIZE_TIME = new LatencyHistogram();
+    static final LongAdder SERVER_COMMANDS = new LongAdder();
+    static final LongAdder AUTOMATED_SKIPPED = new LongAdder();
+    static final LongAdder FINALIZED_EARLY = new LongAdder();
+    static final LongAdder LATE_FEEDBACK = new LongAdder();
+
+    // Rendering (worker threads)
+    static final LatencyHistogram RENDER_TIME = new LatencyHistogram();
+
+    // Delivery (dispatcher threads)
+    static final LatencyHistogram HTTP_LATENCY = new LatencyHistogram();
+    private static final Map<Integer, LongAdder> HTTP_STATUS = new ConcurrentHashMap<>();
+
+    // Values owned by other components (queue depth, ...), read when a snapshot is taken
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private PluginMetrics() {
+    }
+
+    // Status -1 stands for connection errors and timeouts
+    static void recordHttpStatus(int status) {
+        HTTP_STATUS.computeIfAbsent(status, code -> new LongAdder()).increment();
+    }
+
+    static Map<Integer, Long> getHttpStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        HTTP_STATUS.forEach((status, adder) -> counts.put(status, adder.sum()));
+        return counts;
+    }
+
+    static void registerGauge(String name, LongSupplier supplier) {
+        GAUGES.put(name, supplier);
+    }
+
+    static Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        GAUGES.forEach((name, supplier) -> values.put(name, supplier.getAsLong()));
+        return values;
+    }
+
+    // Histograms by metric name, in display order
+    static Map<String, LatencyHistogram> getHistograms() {
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        histograms.put("packet_listener", PACKET_TIME);
+        histograms.put("on_command", COMMAND_TIME);
+        histograms.put("finalize", FINALIZE_TIME);
+        histograms.put("render", RENDER_TIME);
+        histograms.put("http_request", HTTP_LATENCY);
+        return histograms;
+    }
+
+    // Human readable summary for /commandwebhooklogger stats
+    static List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        lines.add("§6Packets: §f" + PACKETS_INSPECTED.sum() + " inspected, " + PACKETS_MATCHED.sum() + " matched");
+        lines.add("§6Commands: §f" + COMMANDS.sum() + " by players, " + SERVER_COMMANDS.sum() + " by other senders, "
+                + AUTOMATED_SKIPPED.sum() + " command block commands sampled out");
+        lines.add("§6Feedback: §f" + FINALIZED_EARLY.sum() + " commands logged as soon as it decided their result, "
+                + LATE_FEEDBACK.sum() + " times it came after the command was logged");
+        getHistograms().forEach((name, histogram) -> lines.add("§6" + name + ": §f" + describe(histogram)));
+
+        StringBuilder status = new StringBuilder("§6HTTP status: §f");
+        Map<Integer, Long> statusCounts = getHttpStatusCounts();
+        if (statusCounts.isEmpty()) status.append("none yet");
+        statusCounts.forEach((code, count) -> status.append(code < 0 ? "error" : code).append('=').append(count).append(' '));
+        lines.add(status.toString().trim());
+
+        getGauges().forEach((name, value) -> lines.add("§6" + name + ": §f" + value));
+        return lines;
+    }
+
+    private static String describe(LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        if (count == 0) return "no samples";
+        return String.format("n=%d mean=%s p50=%s p99=%s max=%s", count,
+                formatNanos((long) histogram.getMeanNanos()),
+                formatNanos(histogram.getPercentileNanos(50)),
+                formatNanos(histogram.getPercentileNanos(99)),
+                formatNanos(histogram.getMaxNanos()));
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) return nanos + "ns";
+        if (nanos < 10_000_000) return (nanos / 1_000) + "µs";
+        return (nanos / 1_000_000) + "ms";
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format. Histograms are
+     * exported as summaries with a few fixed quantiles.
+     */
+    static String toPrometheus() {
+        StringBuilder out = new StringBuilder(2048);
+        counter(out, "cwl_packets_inspected_total", "Chat packets inspected while a command was pending", PACKETS_INSPECTED.sum());
+        counter(out, "cwl_packets_matched_total", "Chat packets that decided a command's result", PACKETS_MATCHED.sum());
+        counter(out, "cwl_commands_total", "Player commands seen", COMMANDS.sum());
+        counter(out, "cwl_server_commands_total", "Console, rcon, command block and other non-player commands logged", SERVER_COMMANDS.sum());
+        counter(out, "cwl_automated_skipped_total", "Command block and minecart commands not logged because of sampling", AUTOMATED_SKIPPED.sum());
+        counter(out, "cwl_finalized_early_total", "Player commands logged before their wait was over because feedback decided the result", FINALIZED_EARLY.sum());
+        counter(out, "cwl_late_feedback_total", "Feedback that would have decided a result but came after the command was logged", LATE_FEEDBACK.sum());
+
+        getHistograms().forEach((name, histogram) -> {
+            String metric = "cwl_" + name + "_seconds";
+            out.append("# TYPE ").append(metric).append(" summary\n");
+            for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+                out.append(metric).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.getPercentileNanos(quantile * 100) / 1e9).append('\n');
+            }
+            out.append(metric).append("_sum ").append(histogram.getSumNanos() / 1e9).append('\n');
+            out.append(metric).append("_count ").append(histogram.getCount()).append('\n');
+        });
+
+        out.append("# TYPE cwl_http_responses_total counter\n");
+        getHttpStatusCounts().forEach((code, count) -> out.append("cwl_http_responses_total{status=\"")
+                .append(code < 0 ? "error" : String.valueOf(code)).append("\"} ").append(count).append('\n'));
+
+        getGauges().forEach((name, value) -> {
+            String metric = "cwl_" + name;
+            out.append("# TYPE ").append(metric).append(name.endsWith("_total") ? " counter\n" : " gauge\n");
+            out.append(metric).append(' ').append(value).append('\n');
+        });
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,310 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The "rules" section compiled into a decision table, deciding which webhooks a command goes to.
+ *
+ * Command patterns are stored in a trie over labels; every trie node carries the bitset of
+ * rules matching a label that ends (or, for "name*" patterns, passes) there, inherited bits
+ * included. Results, worlds, groups and sources map to bitsets of the rules allowing them.
+ * Routing a command is one walk over its label and an AND of five bitsets, the config is never read.
+ * Rules apply in config order: the first matching rule decides, unless it says continue.
+ * If no rule decided, the command goes to webhooks.<result> with templates.<result> as before.
+ */
+final class RoutingRules {
+
+    interface TargetConsumer {
+        void accept(String webhookUrl, EmbedTemplate template);
+    }
+
+    private static final class Rule {
+        final boolean ignore;
+        final String webhookUrl;       // null for ignore rules
+        final EmbedTemplate template;  // null to use the template of the command's result
+        final boolean continueMatching;
+
+        Rule(boolean ignore, String webhookUrl, EmbedTemplate template, boolean continueMatching) {
+            this.ignore = ignore;
+            this.webhookUrl = webhookUrl;
+            this.template = template;
+            this.continueMatching = continueMatching;
+        }
+    }
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        long[] exact;     // rules matching a label that ends here
+        long[] prefix;    // rules with a "...*" pattern ending here
+        long[] whenEnds;  // compiled: rules matching a label ending here (exact | inherited)
+        long[] whenLeft;  // compiled: rules matching a label that leaves the trie here (inherited prefixes)
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node child = child(c);
+            if (child != null) return child;
+            child = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+
+    /**
+     * Rules of one dimension (results, worlds, groups or sources): the bitset per listed value, and the
+     * bitset of rules that do not restrict this dimension (used for every other value).
+     */
+    private static final class Dimension {
+        final Map<String, long[]> byValue = new HashMap<>();
+        long[] unrestricted;
+
+        long[] mask(String value) {
+            long[] mask = value != null ? byValue.get(value) : null;
+            return mask != null ? mask : unrestricted;
+        }
+    }
+
+    private final Rule[] rules;
+    private final int words;
+    private final Node root = new Node();
+    private final Dimension results = new Dimension();
+    private final Dimension worlds = new Dimension();
+    private final Dimension groups = new Dimension();
+    private final Dimension sources = new Dimension();
+    private final Map<String, String> defaultUrls;
+    private final Map<String, EmbedTemplate> templates;
+    private final Set<String> routedResults = new HashSet<>(); // results some target exists for
+    private boolean routesAllResults;
+
+    private RoutingRules(List<Map<?, ?>> config, Map<String, String> webhookUrls, Map<String, EmbedTemplate> templates, Logger logger) {
+        this.defaultUrls = webhookUrls;
+        this.templates = templates;
+        for (String resultKey : webhookUrls.keySet()) {
+            if (templates.containsKey(resultKey)) routedResults.add(resultKey);
+        }
+
+        List<Rule> rules = new ArrayList<>();
+        List<Map<?, ?>> accepted = new ArrayList<>();
+        for (int i = 0; i < config.size(); i++) {
+            Map<?, ?> entry = config.get(i);
+            String name = entry.get("name") != null ? String.valueOf(entry.get("name")) : "#" + (i + 1);
+            Rule rule = parseRule(name, entry, webhookUrls, templates, logger);
+            if (rule == null) continue;
+            rules.add(rule);
+            accepted.add(entry);
+        }
+        this.rules = rules.toArray(new Rule[0]);
+        this.words = (this.rules.length + 63) >>> 6;
+
+        results.unrestricted = new long[words];
+        worlds.unrestricted = new long[words];
+        groups.unrestricted = new long[words];
+        sources.unrestricted = new long[words];
+        for (int index = 0; index < this.rules.length; index++) {
+            Map<?, ?> entry = accepted.get(index);
+
+            List<String> commands = strings(entry.get("commands"));
+            if (commands.isEmpty()) commands = List.of("*");
+            for (String pattern : commands) addPattern(pattern, index);
+
+            List<String> resultKeys = strings(entry.get("results"));
+            addValues(results, resultKeys, index, false);
+            addValues(worlds, strings(entry.get("worlds")), index, false);
+            addValues(groups, strings(entry.get("groups")), index, true);
+            addValues(sources, strings(entry.get("sources")), index, true);
+
+            if (!this.rules[index].ignore) {
+                if (resultKeys.isEmpty()) routesAllResults = true;
+                routedResults.addAll(resultKeys);
+            }
+        }
+        finishDimension(results);
+        finishDimension(worlds);
+        finishDimension(groups);
+        finishDimension(sources);
+        compileTrie(root, new long[words]);
+    }
+
+    /**
+     * Compiles the "rules" list. Invalid rules are skipped with a warning.
+     */
+    static RoutingRules compile(ConfigurationSection config, Map<String, String> webhookUrls,
+                                Map<String, EmbedTemplate> templates, Logger logger) {
+        List<Map<?, ?>> rules = config.getMapList("rules");
+        return new RoutingRules(rules != null ? rules : List.of(), webhookUrls, templates, logger);
+    }
+
+    // True if a command with this result can be sent anywhere at all
+    boolean routes(String resultKey) {
+        return routesAllResults || routedResults.contains(resultKey);
+    }
+
+    /**
+     * Hands every (webhook, template) the command goes to to the consumer. The group is the
+     * player's LuckPerms primary group, the world and result come from the event.
+     */
+    void route(CommandEvent event, String group, TargetConsumer targets) {
+        long[] labelRules = labelRules(event.command);
+        long[] resultRules = results.mask(event.resultKey);
+        long[] worldRules = worlds.mask(event.world);
+        long[] groupRules = groups.mask(group != null ? group.toLowerCase(Locale.ROOT) : null);
+        long[] sourceRules = sources.mask(event.source.key);
+
+        for (int word = 0; word < words; word++) {
+            long bits = labelRules[word] & resultRules[word] & worldRules[word] & groupRules[word] & sourceRules[word];
+            while (bits != 0) {
+                Rule rule = rules[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+
+                if (rule.ignore) return;
+                EmbedTemplate template = rule.template != null ? rule.template : templates.get(event.resultKey);
+                if (template != null) targets.accept(rule.webhookUrl, template);
+                if (!rule.continueMatching) return;
+            }
+        }
+
+        // No rule decided, use the webhook and template named after the result
+        String url = defaultUrls.get(event.resultKey);
+        EmbedTemplate template = templates.get(event.resultKey);
+        if (url != null && template != null) targets.accept(url, template);
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    // Walks the label ("/minecraft:tp Steve" -> "tp") through the trie, no copies or lower-casing
+    private long[] labelRules(String command) {
+        int start = command.startsWith("/") ? 1 : 0;
+        int end = command.indexOf(' ');
+        if (end < 0) end = command.length();
+        int colon = command.lastIndexOf(':', end - 1);
+        if (colon >= start) start = colon + 1;
+
+        Node node = root;
+        for (int i = start; i < end; i++) {
+            Node next = node.child(fold(command.charAt(i)));
+            if (next == null) return node.whenLeft;
+            node = next;
+        }
+        return node.whenEnds;
+    }
+
+    private void addPattern(String pattern, int index) {
+        String normalized = pattern.startsWith("/") ? pattern.substring(1) : pattern;
+        boolean isPrefix = normalized.endsWith("*");
+        if (isPrefix) normalized = normalized.substring(0, normalized.length() - 1);
+
+        Node node = root;
+        for (int i = 0; i < normalized.length(); i++) node = node.addChild(fold(normalized.charAt(i)));
+        if (isPrefix) {
+            if (node.prefix == null) node.prefix = new long[words];
+            set(node.prefix, index);
+        } else {
+            if (node.exact == null) node.exact = new long[words];
+            set(node.exact, index);
+        }
+    }
+
+    // Pushes prefix bits down the trie, so every lookup ends at one precomputed bitset
+    private void compileTrie(Node node, long[] inherited) {
+        long[] here = node.prefix != null ? or(inherited, node.prefix) : inherited;
+        node.whenLeft = here;
+        node.whenEnds = node.exact != null ? or(here, node.exact) : here;
+        for (Node child : node.children) compileTrie(child, here);
+    }
+
+    private void addValues(Dimension dimension, List<String> values, int index, boolean lowerCase) {
+        if (values.isEmpty()) {
+            set(dimension.unrestricted, index);
+            return;
+        }
+        for (String value : values) {
+            String key = lowerCase ? value.toLowerCase(Locale.ROOT) : value;
+            set(dimension.byValue.computeIfAbsent(key, k -> new long[words]), index);
+        }
+    }
+
+    // A listed value also matches every rule that does not restrict the dimension
+    private static void finishDimension(Dimension dimension) {
+        for (long[] mask : dimension.byValue.values()) {
+            for (int word = 0; word < mask.length; word++) mask[word] |= dimension.unrestricted[word];
+        }
+    }
+
+    private static Rule parseRule(String name, Map<?, ?> entry, Map<String, String> webhookUrls,
+                                  Map<String, EmbedTemplate> templates, Logger logger) {
+        String action = entry.get("action") != null ? String.valueOf(entry.get("action")).toLowerCase(Locale.ROOT) : "route";
+        boolean continueMatching = Boolean.parseBoolean(String.valueOf(entry.get("continue")));
+        if (action.equals("ignore")) return new Rule(true, null, null, false);
+        if (!action.equals("route")) {
+            logger.warning("Rule " + name + ": unknown action '" + action + "', expected route or ignore. Skipping it.");
+            return null;
+        }
+
+        // Either a URL or the name of an entry under webhooks
+        Object webhook = entry.get("webhook");
+        String url = webhook == null ? null : String.valueOf(webhook);
+        if (url != null && !url.startsWith("http")) url = webhookUrls.get(url);
+        if (url == null || url.isEmpty()) {
+            logger.warning("Rule " + name + ": 'webhook' must be a URL or a name under webhooks. Skipping it.");
+            return null;
+        }
+
+        EmbedTemplate template = null;
+        if (entry.get("template") != null) {
+            template = templates.get(String.valueOf(entry.get("template")));
+            if (template == null) {
+                logger.warning("Rule " + name + ": unknown template '" + entry.get("template") + "'. Skipping it.");
+                return null;
+            }
+        }
+        return new Rule(false, url, template, continueMatching);
+    }
+
+    private static List<String> strings(Object value) {
+        if (value == null) return List.of();
+        List<String> strings = new ArrayList<>();
+        if (value instanceof Collection<?> collection) {
+            for (Object element : collection) if (element != null) strings.add(String.valueOf(element));
+        } else {
+            strings.add(String.valueOf(value));
+        }
+        return strings;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << (index & 63);
+    }
+
+    private static long[] or(long[] a, long[] b) {
+        long[] result = a.clone();
+        for (int i = 0; i < result.length; i++) result[i] |= b[i];
+        return result;
+    }
+
+    private static char fold(char c) {
+        if (c < 128) return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        return Character.toLowerCase(c);
+    }
+}
@@ -0,0 +1,173 @@
+package com.niko.commandlogger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A template string parsed once into literal segments and placeholder slots.
+ *
+ * Literal segments are stored already escaped and UTF-8 encoded, so rendering is a single
+ * pass that copies literals as-is and escapes only the placeholder values. Unknown %tokens%
+ * are kept as literal text, the same as the old chained String.replace() calls did.
+ */
+final class TemplateString {
+
+    static final TemplateString EMPTY = new TemplateString(List.of(""), new Placeholder[0]);
+
+    private final String[] literals;        // always slots.length + 1 entries
+    private final byte[][] encodedLiterals; // the literals escaped and encoded
+    private final int[] literalCodePoints;
+    private final Placeholder[] slots;
+
+    private TemplateString(List<String> literals, Placeholder[] slots) {
+        this.literals = literals.toArray(new String[0]);
+        this.encodedLiterals = new byte[this.literals.length][];
+        this.literalCodePoints = new int[this.literals.length];
+        for (int i = 0; i < this.literals.length; i++) {
+            encodedLiterals[i] = JsonWriter.encode(this.literals[i]);
+            literalCodePoints[i] = JsonWriter.codePoints(this.literals[i]);
+        }
+        this.slots = slots;
+    }
+
+    static TemplateString compile(String text) {
+        if (text == null || text.isEmpty()) return EMPTY;
+
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> slots = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int index = 0;
+        while (index < text.length()) {
+            int start = text.indexOf('%', index);
+            int end = start < 0 ? -1 : text.indexOf('%', start + 1);
+            if (end < 0) {
+                literal.append(text, index, text.length());
+                break;
+            }
+
+            Placeholder placeholder = Placeholder.byName(text.substring(start + 1, end));
+            if (placeholder == null) {
+                // Not one of ours, keep the first '%' and continue from the second one
+                literal.append(text, index, end);
+                index = end;
+                continue;
+            }
+
+            literal.append(text, index, start);
+            index = end + 1;
+            if (placeholder == Placeholder.ERROR) continue; // always empty, nothing to render
+
+            literals.add(literal.toString());
+            slots.add(placeholder);
+            literal.setLength(0);
+        }
+        literals.add(literal.toString());
+
+        return new TemplateString(literals, slots.toArray(new Placeholder[0]));
+    }
+
+    // True if rendering this string can never produce any output
+    boolean isEmpty() {
+        return slots.length == 0 && literals[0].isEmpty();
+    }
+
+    // Writes the text into the string the writer has begun (see JsonWriter.beginText)
+    void writeTo(JsonWriter out, TemplateValues values) {
+        out.text(encodedLiterals[0], literalCodePoints[0], literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i].writeTo(out, values);
+            out.text(encodedLiterals[i + 1], literalCodePoints[i + 1], literals[i + 1]);
+        }
+    }
+
+    enum Placeholder {
+        PLAYER("player") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.player);
+            }
+        },
+        COMMAND("command") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.command);
+            }
+        },
+        DISCORD_MENTION("discord_mention") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.discordMention);
+            }
+        },
+        GROUP("group") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.group);
+            }
+        },
+        WORLD("world") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.world);
+            }
+        },
+        X("x") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.x);
+            }
+        },
+        Y("y") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.y);
+            }
+        },
+        Z("z") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.z);
+            }
+        },
+        SOURCE("source") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.source);
+            }
+        },
+        COUNT("count") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.count);
+            }
+        },
+        WINDOW("window") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                out.text(values.window);
+            }
+        },
+        ERROR("error") {
+            @Override
+            void writeTo(JsonWriter out, TemplateValues values) {
+                // Not used at the moment, always renders as an empty string
+            }
+        };
+
+        private final String name;
+
+        Placeholder(String name) {
+            this.name = name;
+        }
+
+        abstract void writeTo(JsonWriter out, TemplateValues values);
+
+        static Placeholder byName(String name) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.name.equals(name)) return placeholder;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.niko.commandlogger;
+
+/**
+ * The values a template's placeholders are filled with for one logged command.
+ */
+final class TemplateValues {
+
+    final String source;
+    final String player;
+    final String command;
+    final String discordMention;
+    final String group;
+    final String world;
+    final int x;
+    final int y;
+    final int z;
+    final int count;
+    final String window; // null unless this is a summary of repeated commands
+
+    TemplateValues(String source, String player, String command, String discordMention, String group, String world, int x, int y, int z,
+                   int count, String window) {
+        this.source = source;
+        this.player = player;
+        this.command = command;
+        this.discordMention = discordMention;
+        this.group = group;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.count = count;
+        this.window = window;
+    }
+}
@@ -0,0 +1,93 @@
+package com.niko.commandlogger;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel driven by a single repeating task, one slot per server tick.
+ *
+ * Entries are linked into their slot intrusively (no node objects), so scheduling is an
+ * O(1) pointer write and a tick only looks at the one slot that is due. Delays longer
+ * than the wheel simply stay in their slot for another lap. Not thread-safe: schedule
+ * and advance are only ever called from the main thread.
+ */
+final class TickWheel {
+
+    private static final int SLOTS = 64; // power of two, comfortably above any sensible wait time
+
+    private final Entry[] slots = new Entry[SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * Base class for anything the wheel can hold. An entry may only be in the wheel once,
+     * it can be scheduled again once it was handed out as due.
+     */
+    abstract static class Entry {
+        private Entry nextInSlot;
+        private long dueTick;
+    }
+
+    void schedule(Entry entry, int delayTicks) {
+        // Like runTaskLater, anything below one tick runs on the next tick
+        entry.dueTick = currentTick + Math.max(1, delayTicks);
+        int slot = (int) (entry.dueTick & (SLOTS - 1));
+        entry.nextInSlot = slots[slot];
+        slots[slot] = entry;
+        size++;
+    }
+
+    /**
+     * Moves the wheel forward by one tick and hands every entry that is now due to the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    <E extends Entry> void advance(Consumer<E> onDue) {
+        currentTick++;
+        if (size == 0) return;
+
+        int slot = (int) (currentTick & (SLOTS - 1));
+        Entry entry = slots[slot];
+        Entry keep = null;
+        slots[slot] = null;
+
+        while (entry != null) {
+            Entry next = entry.nextInSlot;
+            if (entry.dueTick <= currentTick) {
+                entry.nextInSlot = null;
+                size--;
+                onDue.accept((E) entry);
+            } else {
+                // Due in a later lap
+                entry.nextInSlot = keep;
+                keep = entry;
+            }
+            entry = next;
+        }
+        // Entries scheduled by the consumer for this very slot were put in front of the (now empty) slot
+        if (keep != null) {
+            Entry tail = keep;
+            while (tail.nextInSlot != null) tail = tail.nextInSlot;
+            tail.nextInSlot = slots[slot];
+            slots[slot] = keep;
+        }
+    }
+
+    // Removes and returns every scheduled entry, due or not (used when the plugin is disabled)
+    @SuppressWarnings("unchecked")
+    <E extends Entry> void drain(Consumer<E> consumer) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            Entry entry = slots[slot];
+            slots[slot] = null;
+            while (entry != null) {
+                Entry next = entry.nextInSlot;
+                entry.nextInSlot = null;
+                consumer.accept((E) entry);
+                entry = next;
+            }
+        }
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,669 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Coalesces embeds into Discord messages and delivers them per webhook URL.
+ *
+ * Every URL gets its own bounded queue. A queue is flushed once it holds a full batch
+ * (Discord accepts at most 10 embeds and 6000 characters of text per message) or when its linger time runs out,
+ * with at most max-concurrent-per-webhook requests per URL in flight. Discord's
+ * X-RateLimit-* and Retry-After headers are tracked per bucket so we wait for the reset
+ * instead of running into 429s.
+ *
+ * A single scheduler thread only times and hands out batches; the blocking requests run
+ * on the delivery executor (virtual threads on Java 21+, a small fixed pool otherwise).
+ * What happens when a queue is full is decided by the overload policy.
+ */
+final class WebhookDispatcher {
+
+    // Discord rejects messages with more than 10 embeds
+    static final int MAX_EMBEDS_PER_MESSAGE = 10;
+
+    enum OverloadPolicy {
+        DROP_OLDEST,          // make room by dropping the oldest queued embed
+        BLOCK,                // let the rendering thread wait up to block-ms for room, then drop the oldest
+        DROP_LOWEST_PRIORITY, // drop the oldest embed of the least important result (possibly the new one)
+        SPILL                 // keep new embeds only in the spool until the queue has room again
+    }
+
+    private final Logger logger;
+    private final WebhookSpool spool;
+    private final WebhookHttpClient httpClient = new WebhookHttpClient();
+    private final ScheduledExecutorService executor;
+    private volatile ExecutorService deliveryExecutor; // created by the first configure()
+    private final Map<String, WebhookQueue> queues = new ConcurrentHashMap<>();
+    private final Map<String, RateLimitBucket> bucketsByUrl = new ConcurrentHashMap<>();
+    private final Map<String, RateLimitBucket> bucketsById = new ConcurrentHashMap<>();
+    // Payload buffers, one per request in flight at most. Delivery may run on virtual threads, so no thread-locals.
+    private final Queue<JsonWriter> payloadBuffers = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder sentEmbeds = new LongAdder();
+    private final LongAdder droppedEmbeds = new LongAdder();
+    private final LongAdder retriedBatches = new LongAdder();
+    private final LongAdder spilledEmbeds = new LongAdder();
+
+    // System.nanoTime() until which every webhook is paused after a global 429
+    private volatile long globalResetAt;
+
+    private volatile int queueCapacity = 500;
+    private volatile int batchSize = MAX_EMBEDS_PER_MESSAGE;
+    private volatile long lingerMillis = 1000;
+    private volatile int maxRetries = 5;
+    private volatile int maxConcurrent = 1;
+    private volatile OverloadPolicy overloadPolicy = OverloadPolicy.DROP_OLDEST;
+    private volatile long blockNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile Map<String, Integer> priorities = Map.of(); // result key -> priority, higher is kept longer
+    private volatile boolean debug;
+    private volatile boolean shutdown;
+
+    WebhookDispatcher(Logger logger, WebhookSpool spool) {
+        this.logger = logger;
+        this.spool = spool;
+
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("Dispatch"));
+        pool.setRemoveOnCancelPolicy(true);
+        this.executor = pool;
+    }
+
+    // Reads the "delivery" section. Called on enable and on /commandwebhooklogger reload.
+    void configure(ConfigurationSection config) {
+        ConfigurationSection delivery = config.getConfigurationSection("delivery");
+        if (delivery != null) {
+            queueCapacity = Math.max(1, delivery.getInt("queue-capacity", 500));
+            batchSize = Math.max(1, Math.min(MAX_EMBEDS_PER_MESSAGE, delivery.getInt("batch-size", MAX_EMBEDS_PER_MESSAGE)));
+            lingerMillis = Math.max(0, delivery.getLong("linger-ms", 1000));
+            maxRetries = Math.max(0, delivery.getInt("max-retries", 5));
+            maxConcurrent = Math.max(1, delivery.getInt("max-concurrent-per-webhook", 1));
+            blockNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delivery.getLong("block-ms", 100)));
+
+            String policy = delivery.getString("overload-policy", "drop-oldest");
+            try {
+                overloadPolicy = OverloadPolicy.valueOf(policy.toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Unknown delivery.overload-policy '" + policy + "', using drop-oldest.");
+                overloadPolicy = OverloadPolicy.DROP_OLDEST;
+            }
+
+            // Listed from most to least important, unlisted results come last
+            List<String> order = delivery.getStringList("priorities");
+            Map<String, Integer> priorities = new HashMap<>();
+            for (int i = 0; i < order.size(); i++) priorities.putIfAbsent(order.get(i), order.size() - i);
+            this.priorities = priorities;
+        }
+        httpClient.configure(delivery);
+        debug = config.getBoolean("debug", false);
+
+        if (deliveryExecutor == null) {
+            boolean virtualThreads = delivery == null || delivery.getBoolean("virtual-threads", true);
+            int threads = delivery != null ? Math.max(1, delivery.getInt("threads", 4)) : 4;
+            deliveryExecutor = createDeliveryExecutor(virtualThreads, threads);
+        }
+    }
+
+    // Virtual threads on Java 21+, so a slow endpoint parks cheap threads instead of holding the pool.
+    // Looked up reflectively because the plugin is built for Java 17.
+    private ExecutorService createDeliveryExecutor(boolean virtualThreads, int threads) {
+        if (virtualThreads) {
+            try {
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "CommandWebhookLogger-Delivery-", 1L);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+                if (debug) logger.info("Delivering webhooks on virtual threads.");
+                return executor;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Java 17 to 20 (on 19 and 20 they are a disabled preview feature)
+            }
+        }
+        if (debug) logger.info("Delivering webhooks on " + threads + " platform threads.");
+        return Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Delivery"));
+    }
+
+    /**
+     * Queues a single embed object (UTF-8 JSON, see EmbedTemplate.render) for the given
+     * webhook, with the characters it counts against Discord's per-message limit. The
+     * embed is written to the spool first. If the queue is full the overload policy
+     * decides what is dropped; with the block policy this may wait, so it must never be
+     * called on the main thread.
+     */
+    void enqueue(String webhookUrl, byte[] embedJson, int characters, String resultKey) {
+        if (shutdown) {
+            droppedEmbeds.increment();
+            return;
+        }
+        Integer priority = priorities.get(resultKey);
+        QueuedEmbed embed = new QueuedEmbed(embedJson, characters, spool.append(webhookUrl, embedJson), priority != null ? priority : 0);
+        enqueue(webhookUrl, embed, true);
+    }
+
+    // Queues an embed replayed from the spool on startup. The spool's disk budget already
+    // bounds how many there can be, so they are only subject to the queue capacity when
+    // they can stay spilled.
+    void enqueueReplayed(String webhookUrl, byte[] embedJson, long spoolRef) {
+        enqueue(webhookUrl, QueuedEmbed.fromSpool(embedJson, spoolRef), overloadPolicy == OverloadPolicy.SPILL);
+    }
+
+    private void enqueue(String webhookUrl, QueuedEmbed embed, boolean bounded) {
+        WebhookQueue queue = queues.computeIfAbsent(webhookUrl, WebhookQueue::new);
+        synchronized (queue) {
+            if (!bounded || admit(queue, embed)) queue.embeds.addLast(embed);
+
+            if (queue.inFlight >= maxConcurrent) return; // a finishing request reschedules
+            if (queue.pendingFlush == null) {
+                scheduleFlush(queue, queue.embeds.size() >= batchSize ? 0 : lingerMillis);
+            } else if (queue.embeds.size() >= batchSize && !queue.waitingForRateLimit && queue.pendingFlush.cancel(false)) {
+                // A full batch does not need to wait for the linger time. If the cancel failed the
+                // flush is already running and will pick this embed up.
+                scheduleFlush(queue, 0);
+            }
+        }
+    }
+
+    // Applies the overload policy. Returns false if the new embed is not to be kept in memory.
+    // Must be called while holding the queue's lock.
+    private boolean admit(WebhookQueue queue, QueuedEmbed embed) {
+        OverloadPolicy policy = overloadPolicy;
+        if (policy == OverloadPolicy.SPILL && embed.spoolRef != WebhookSpool.NO_REF
+                && (queue.embeds.size() >= queueCapacity || !queue.spilled.isEmpty())) {
+            // Once something is spilled newer embeds follow it, so they still go out in order
+            queue.spilled.addLast(embed.spoolRef);
+            spilledEmbeds.increment();
+            return false;
+        }
+        if (queue.embeds.size() < queueCapacity) return true;
+
+        if (policy == OverloadPolicy.BLOCK && awaitRoom(queue)) return true;
+        if (policy == OverloadPolicy.DROP_LOWEST_PRIORITY) return dropLowestPriority(queue, embed);
+
+        drop(queue.embeds.pollFirst());
+        if (debug) {
+            logger.warning("Webhook queue for " + queue.url + " is full (" + queueCapacity + "), dropped the oldest embed.");
+        }
+        return true;
+    }
+
+    // Waits (releasing the lock) until a batch was taken out of the full queue, at most block-ms
+    private boolean awaitRoom(WebhookQueue queue) {
+        long deadline = System.nanoTime() + blockNanos;
+        try {
+            while (queue.embeds.size() >= queueCapacity) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || shutdown) return false;
+                TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Drops the oldest embed of the lowest priority, or the new one if it is less important than all queued ones
+    private boolean dropLowestPriority(WebhookQueue queue, QueuedEmbed embed) {
+        QueuedEmbed lowest = null;
+        for (QueuedEmbed queued : queue.embeds) {
+            if (lowest == null || queued.priority < lowest.priority) lowest = queued;
+        }
+        if (lowest == null || embed.priority < lowest.priority) {
+            drop(embed);
+            return false;
+        }
+        queue.embeds.removeFirstOccurrence(lowest);
+        drop(lowest);
+        return true;
+    }
+
+    // Moves spilled embeds back into memory while the queue has room. The spool is read outside the queue's lock.
+    private void refill(WebhookQueue queue) {
+        while (true) {
+            long ref;
+            synchronized (queue) {
+                if (queue.spilled.isEmpty() || queue.embeds.size() >= queueCapacity) return;
+                ref = queue.spilled.pollFirst();
+            }
+            byte[] json = spool.read(ref);
+            if (json == null) {
+                // Lost to the spool's disk budget
+                droppedEmbeds.increment();
+                continue;
+            }
+            synchronized (queue) {
+                queue.embeds.addLast(QueuedEmbed.fromSpool(json, ref));
+            }
+        }
+    }
+
+    // Must be called while holding the queue's lock
+    private void scheduleFlush(WebhookQueue queue, long delayMillis) {
+        try {
+            queue.pendingFlush = executor.schedule(() -> flush(queue), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, shutdown() drains whatever is left
+            queue.pendingFlush = null;
+        }
+    }
+
+    // Runs on the scheduler thread: hands the next batch to the delivery executor, never blocks on the network
+    private void flush(WebhookQueue queue) {
+        synchronized (queue) {
+            if (queue.inFlight >= maxConcurrent) {
+                queue.pendingFlush = null; // a finishing request reschedules
+                return;
+            }
+        }
+        refill(queue);
+
+        synchronized (queue) {
+            if (queue.embeds.isEmpty()) {
+                // Nothing to send, do not spend a rate limit token on it
+                queue.waitingForRateLimit = false;
+                queue.pendingFlush = null;
+                return;
+            }
+            long waitMillis = rateLimitDelayMillis(queue.url);
+            if (waitMillis > 0) {
+                queue.waitingForRateLimit = true;
+                scheduleFlush(queue, waitMillis);
+                return;
+            }
+            queue.waitingForRateLimit = false;
+            queue.pendingFlush = null;
+            List<QueuedEmbed> batch = drainBatch(queue);
+
+            queue.inFlight++;
+            try {
+                deliveryExecutor.execute(() -> send(queue, batch));
+            } catch (RejectedExecutionException e) {
+                // Shutting down, shutdown() drains whatever is left
+                queue.inFlight--;
+                for (int i = batch.size() - 1; i >= 0; i--) queue.embeds.addFirst(batch.get(i));
+                return;
+            }
+            // Another full batch may go out in parallel
+            if (queue.inFlight < maxConcurrent && queue.embeds.size() >= batchSize) scheduleFlush(queue, 0);
+        }
+    }
+
+    // Runs on a delivery thread
+    private void send(WebhookQueue queue, List<QueuedEmbed> batch) {
+        long nextDelay = deliver(queue, batch);
+
+        synchronized (queue) {
+            queue.inFlight--;
+            if (shutdown || !queue.hasWork()) return;
+            boolean backOff = nextDelay > 0;
+            if (nextDelay < 0) {
+                nextDelay = queue.embeds.size() >= batchSize ? 0 : lingerMillis;
+            }
+            if (queue.pendingFlush == null) {
+                scheduleFlush(queue, nextDelay);
+            } else if (backOff && queue.pendingFlush.cancel(false)) {
+                // Rate limited or failing, the other requests wait as well
+                scheduleFlush(queue, nextDelay);
+            }
+        }
+    }
+
+    // Takes up to batch-size embeds, fewer if their text would exceed Discord's 6000 characters per message.
+    // Must be called while holding the queue's lock.
+    private List<QueuedEmbed> drainBatch(WebhookQueue queue) {
+        List<QueuedEmbed> batch = new ArrayList<>(Math.min(batchSize, queue.embeds.size()));
+        int characters = 0;
+        while (batch.size() < batchSize && !queue.embeds.isEmpty()) {
+            QueuedEmbed next = queue.embeds.peekFirst();
+            if (!batch.isEmpty() && characters + next.characters > JsonWriter.MAX_EMBED_TOTAL) break;
+            characters += next.characters;
+            batch.add(queue.embeds.pollFirst());
+        }
+        if (!batch.isEmpty()) queue.notifyAll(); // producers waiting for room (block policy)
+        return batch;
+    }
+
+    // Sends one batch. Returns the delay before the next flush, or -1 to use the normal linger logic.
+    private long deliver(WebhookQueue queue, List<QueuedEmbed> batch) {
+        JsonWriter payload = payloadBuffers.poll();
+        if (payload == null) payload = new JsonWriter();
+        Response response;
+        try {
+            response = post(queue.url, buildPayload(payload, batch));
+        } finally {
+            payload.reset();
+            payloadBuffers.offer(payload);
+        }
+
+        if (response.status >= 200 && response.status < 300) {
+            queue.attempts.set(0);
+            sentEmbeds.add(batch.size());
+            for (QueuedEmbed embed : batch) spool.ack(embed.spoolRef);
+            if (debug) {
+                logger.info("Webhook sent to " + queue.url + " (" + batch.size() + " embeds). Response code: " + response.status
+                        + ". Queue depth: " + queue.depth());
+            }
+            return -1;
+        }
+
+        if (response.status == 429) {
+            // Rate limited requests are not counted as failed attempts, Discord tells us when to come back
+            retriedBatches.increment();
+            requeue(queue, batch);
+            logger.warning("Webhook " + queue.url + " is rate limited, retrying in " + response.retryAfterMillis + "ms.");
+            return Math.max(response.retryAfterMillis, 0);
+        }
+
+        // Network errors and server side failures are worth retrying, everything else is our fault
+        if (response.status < 0 || response.status >= 500) {
+            int attempts = queue.attempts.incrementAndGet();
+            if (attempts <= maxRetries) {
+                retriedBatches.increment();
+                requeue(queue, batch);
+                long backoff = Math.min(30_000L, 500L << Math.min(attempts, 6));
+                logger.warning("Failed to send webhook to " + queue.url + " (" + response.describe() + "), retrying in " + backoff + "ms.");
+                return backoff;
+            }
+            queue.attempts.set(0);
+            for (QueuedEmbed embed : batch) drop(embed);
+            logger.warning("Giving up on " + batch.size() + " embeds for " + queue.url + " after " + maxRetries + " retries: " + response.describe());
+            return -1;
+        }
+
+        // Discord will never accept this batch, so it is not kept in the spool either
+        queue.attempts.set(0);
+        for (QueuedEmbed embed : batch) drop(embed);
+        logger.warning("Failed to send webhook to " + queue.url + ". " + response.describe());
+        return -1;
+    }
+
+    private void drop(QueuedEmbed embed) {
+        droppedEmbeds.increment();
+        spool.ack(embed.spoolRef);
+    }
+
+    private void requeue(WebhookQueue queue, List<QueuedEmbed> batch) {
+        synchronized (queue) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                queue.embeds.addFirst(batch.get(i));
+            }
+            // Keep the queue bounded, newer embeds lose against the batch being retried
+            while (queue.embeds.size() > queueCapacity) {
+                drop(queue.embeds.pollLast());
+            }
+        }
+    }
+
+    private static JsonWriter buildPayload(JsonWriter out, List<QueuedEmbed> embeds) {
+        out.raw("{\"embeds\":[");
+        for (int i = 0; i < embeds.size(); i++) {
+            if (i > 0) out.raw(",");
+            out.raw(embeds.get(i).json);
+        }
+        return out.raw("]}");
+    }
+
+    // --- Rate limits ---
+
+    // Takes a token from the URL's bucket, only call it right before sending a batch
+    private long rateLimitDelayMillis(String url) {
+        long now = System.nanoTime();
+        long global = globalResetAt;
+        if (global - now > 0) return TimeUnit.NANOSECONDS.toMillis(global - now) + 1;
+
+        RateLimitBucket bucket = bucketsByUrl.get(url);
+        return bucket == null ? 0 : bucket.acquire(now);
+    }
+
+    private void updateRateLimits(String url, WebhookHttpClient.Response response, long retryAfterMillis) {
+        if (response.status < 0) return;
+        long now = System.nanoTime();
+
+        if (response.status == 429 && "true".equalsIgnoreCase(response.header("X-RateLimit-Global"))) {
+            globalResetAt = now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+        }
+
+        String bucketId = response.header("X-RateLimit-Bucket");
+        String remaining = response.header("X-RateLimit-Remaining");
+        String resetAfter = response.header("X-RateLimit-Reset-After");
+        if (bucketId == null) bucketId = url;
+
+        RateLimitBucket bucket = bucketsById.computeIfAbsent(bucketId, id -> new RateLimitBucket());
+        bucketsByUrl.put(url, bucket);
+
+        if (response.status == 429) {
+            bucket.update(0, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        } else if (remaining != null && resetAfter != null) {
+            try {
+                long resetNanos = (long) (Double.parseDouble(resetAfter) * 1_000_000_000L);
+                bucket.update(Integer.parseInt(remaining), now + resetNanos);
+            } catch (NumberFormatException ignored) {
+                // Malformed headers, keep the previous state
+            }
+        }
+    }
+
+    private static long parseRetryAfterMillis(WebhookHttpClient.Response response) {
+        // Discord sends Retry-After in seconds, possibly with a fraction
+        String header = response.header("Retry-After");
+        if (header == null) header = response.header("X-RateLimit-Reset-After");
+        if (header == null) return 1000;
+        try {
+            return (long) Math.ceil(Double.parseDouble(header) * 1000);
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    private Response post(String webhookUrl, JsonWriter payload) {
+        WebhookHttpClient.Response response = httpClient.postJson(webhookUrl, payload.buffer(), payload.length());
+        long retryAfterMillis = response.status == 429 ? parseRetryAfterMillis(response) : 0;
+        updateRateLimits(webhookUrl, response, retryAfterMillis);
+
+        String details = response.status < 0 || response.status >= 400 ? response.body : null;
+        return new Response(response.status, retryAfterMillis, details);
+    }
+
+    // --- Lifecycle and counters ---
+
+    /**
+     * Stops accepting embeds and sends whatever is still queued, ignoring linger times,
+     * until the timeout runs out. Every webhook is drained on its own delivery thread, so
+     * a slow endpoint cannot use up the time of the others.
+     */
+    void shutdown(long timeoutMillis) {
+        shutdown = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        for (WebhookQueue queue : queues.values()) {
+            synchronized (queue) {
+                if (queue.pendingFlush != null) queue.pendingFlush.cancel(false);
+                queue.pendingFlush = null;
+                queue.notifyAll(); // nobody waits for room anymore
+            }
+        }
+        executor.shutdown();
+
+        ExecutorService delivery = deliveryExecutor;
+        for (WebhookQueue queue : queues.values()) {
+            try {
+                delivery.execute(() -> drain(queue, deadline));
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        delivery.shutdown();
+        try {
+            delivery.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delivery.shutdownNow();
+        executor.shutdownNow();
+        try {
+            // Let interrupted requests return before their HTTP client is closed underneath them
+            delivery.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (WebhookQueue queue : queues.values()) {
+            synchronized (queue) {
+                // Spooled and spilled embeds stay unacknowledged and are replayed on the next start
+                for (QueuedEmbed embed : queue.embeds) {
+                    if (embed.spoolRef == WebhookSpool.NO_REF) droppedEmbeds.increment();
+                }
+                queue.embeds.clear();
+                queue.spilled.clear();
+            }
+        }
+        httpClient.shutdown();
+    }
+
+    private void drain(WebhookQueue queue, long deadline) {
+        while (System.nanoTime() < deadline) {
+            refill(queue);
+            List<QueuedEmbed> batch;
+            synchronized (queue) {
+                // Only take a rate limit token when there is something to send
+                if (queue.embeds.isEmpty() || rateLimitDelayMillis(queue.url) > 0) break;
+                batch = drainBatch(queue);
+            }
+            if (deliver(queue, batch) > 0) break; // rate limited or failing, no point in hammering it now
+        }
+    }
+
+    int getQueueDepth() {
+        int depth = 0;
+        for (WebhookQueue queue : queues.values()) depth += queue.depth();
+        return depth;
+    }
+
+    long getSentEmbeds() {
+        return sentEmbeds.sum();
+    }
+
+    long getDroppedEmbeds() {
+        return droppedEmbeds.sum();
+    }
+
+    long getRetriedBatches() {
+        return retriedBatches.sum();
+    }
+
+    long getSpilledEmbeds() {
+        return spilledEmbeds.sum();
+    }
+
+    int getInFlight() {
+        int inFlight = 0;
+        for (WebhookQueue queue : queues.values()) {
+            synchronized (queue) {
+                inFlight += queue.inFlight;
+            }
+        }
+        return inFlight;
+    }
+
+    // --- Internal state ---
+
+    private static final class WebhookQueue {
+        final String url;
+        final ArrayDeque<QueuedEmbed> embeds = new ArrayDeque<>(); // guarded by this
+        final ArrayDeque<Long> spilled = new ArrayDeque<>();       // spool refs of embeds kept on disk only, guarded by this
+        ScheduledFuture<?> pendingFlush;                           // guarded by this
+        int inFlight;                                              // guarded by this
+        boolean waitingForRateLimit;                               // guarded by this
+        final AtomicInteger attempts = new AtomicInteger();        // failed attempts in a row
+
+        WebhookQueue(String url) {
+            this.url = url;
+        }
+
+        // Must be called while holding the lock
+        boolean hasWork() {
+            return !embeds.isEmpty() || !spilled.isEmpty();
+        }
+
+        synchronized int depth() {
+            return embeds.size() + spilled.size();
+        }
+    }
+
+    private static final class QueuedEmbed {
+        final byte[] json;
+        final int characters; // counted against Discord's 6000 per message
+        final long spoolRef;
+        final int priority;
+
+        QueuedEmbed(byte[] json, int characters, long spoolRef, int priority) {
+            this.json = json;
+            this.characters = characters;
+            this.spoolRef = spoolRef;
+            this.priority = priority;
+        }
+
+        // The spool does not keep the character count. The JSON's size in bytes is an upper bound of it.
+        static QueuedEmbed fromSpool(byte[] json, long spoolRef) {
+            return new QueuedEmbed(json, Math.min(json.length, JsonWriter.MAX_EMBED_TOTAL), spoolRef, 0);
+        }
+    }
+
+    // Token state for one Discord rate limit bucket, several webhook URLs may share it
+    private static final class RateLimitBucket {
+        private int remaining = Integer.MAX_VALUE; // unknown until Discord tells us
+        private long resetAt;
+
+        // Takes a token, or returns how long to wait until the bucket resets
+        synchronized long acquire(long now) {
+            if (remaining > 0 || now - resetAt >= 0) {
+                if (now - resetAt >= 0 && remaining <= 0) remaining = Integer.MAX_VALUE;
+                remaining--;
+                return 0;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(resetAt - now) + 1;
+        }
+
+        synchronized void update(int remaining, long resetAt) {
+            this.remaining = remaining;
+            this.resetAt = resetAt;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final long retryAfterMillis;
+        final String details;
+
+        Response(int status, long retryAfterMillis, String details) {
+            this.status = status;
+            this.retryAfterMillis = retryAfterMillis;
+            this.details = details;
+        }
+
+        String describe() {
+            if (status < 0) return "Connection error: " + details;
+            return "Response code: " + status + (details != null ? ". Details: " + details : "");
+        }
+    }
+}
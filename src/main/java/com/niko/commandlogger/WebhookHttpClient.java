@@ -0,0 +1,183 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared keep-alive HTTP client for webhook delivery.
+ *
+ * One java.net.http.HttpClient is reused for every request, so connections (and their
+ * TLS sessions) stay open between messages and HTTP/2 requests to Discord are
+ * multiplexed over a single connection. The client runs on its own small thread pool
+ * and every request has a timeout, so a stalled endpoint can only ever hold our own
+ * threads for a bounded time. A client replaced on reload is closed, together with its
+ * threads, once its last request has finished. After shutdown() every request fails right away.
+ */
+final class WebhookHttpClient {
+
+    private volatile Client client;
+    private volatile boolean shutdown;
+    private volatile Duration connectTimeout;
+    private volatile Duration requestTimeout = Duration.ofSeconds(10);
+
+    WebhookHttpClient() {
+        configure(Duration.ofSeconds(5), requestTimeout);
+    }
+
+    // Reads delivery.connect-timeout-ms and delivery.read-timeout-ms
+    void configure(ConfigurationSection delivery) {
+        if (delivery == null) return;
+        configure(Duration.ofMillis(Math.max(1, delivery.getLong("connect-timeout-ms", 5000))),
+                Duration.ofMillis(Math.max(1, delivery.getLong("read-timeout-ms", 10000))));
+    }
+
+    private synchronized void configure(Duration connectTimeout, Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        // The connect timeout is baked into the client, only rebuild it (and lose pooled connections) when it changes
+        if (client == null || !connectTimeout.equals(this.connectTimeout)) {
+            this.connectTimeout = connectTimeout;
+            Client previous = client;
+            client = new Client(connectTimeout);
+            if (previous != null) previous.retire();
+        }
+    }
+
+    /**
+     * POSTs the first length bytes of a UTF-8 JSON payload and blocks until the response
+     * arrives or the request times out, so the caller may reuse the buffer afterwards.
+     * Connection failures and timeouts are reported as status -1 instead of being thrown.
+     */
+    Response postJson(String url, byte[] payload, int length) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(payload, 0, length))
+                    .build();
+
+            Client current = acquire();
+            if (current == null) return Response.failed("Shut down");
+            try {
+                long start = System.nanoTime();
+                HttpResponse<String> response = current.http.send(request, HttpResponse.BodyHandlers.ofString());
+                PluginMetrics.HTTP_LATENCY.record(System.nanoTime() - start);
+                PluginMetrics.recordHttpStatus(response.statusCode());
+                return new Response(response.statusCode(), response.headers(), response.body());
+            } finally {
+                current.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            PluginMetrics.recordHttpStatus(-1);
+            return Response.failed("Interrupted");
+        } catch (Exception e) {
+            PluginMetrics.recordHttpStatus(-1);
+            return Response.failed(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    // The current client, counted as in use until release(), or null after shutdown()
+    private Client acquire() {
+        while (!shutdown) {
+            Client current = client;
+            current.inFlight.incrementAndGet();
+            if (!current.retired) return current;
+            // Replaced in the meantime, do not start a request on a client that may be closing
+            current.release();
+        }
+        return null;
+    }
+
+    void shutdown() {
+        shutdown = true;
+        Client current = client;
+        current.retired = true;
+        current.executor.shutdown();
+        try {
+            current.executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        current.close();
+    }
+
+    /**
+     * One HttpClient with its own threads. Retired clients close once nothing uses them.
+     */
+    private static final class Client {
+        final ExecutorService executor = Executors.newFixedThreadPool(2, new DaemonThreadFactory("Http"));
+        final HttpClient http;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean retired;
+
+        Client(Duration connectTimeout) {
+            this.http = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2) // falls back to HTTP/1.1 with keep-alive if the server does not offer h2
+                    .connectTimeout(connectTimeout)
+                    .followRedirects(HttpClient.Redirect.NEVER)
+                    .executor(executor)
+                    .build();
+        }
+
+        void release() {
+            if (inFlight.decrementAndGet() == 0 && retired) close();
+        }
+
+        void retire() {
+            retired = true;
+            if (inFlight.get() == 0) close();
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            // HttpClient is closeable from Java 21 on; before that its selector thread ends once the client is unreachable
+            if (http instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception ignored) {
+                    // Nothing in flight, closing cannot fail in a way that matters
+                }
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    static final class Response {
+        private static final HttpHeaders NO_HEADERS = HttpHeaders.of(Map.of(), (name, value) -> true);
+
+        final int status;
+        final HttpHeaders headers;
+        final String body;
+
+        Response(int status, HttpHeaders headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static Response failed(String reason) {
+            return new Response(-1, NO_HEADERS, reason);
+        }
+
+        boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+
+        String header(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+    }
+}
@@ -1,159 +1,127 @@
 package com.niko.commandlogger;
 
-import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
-public class WebhookSender {
+public class WebhookSender implements CommandSink {
 
     private final JavaPlugin plugin;
+    private final PlayerContextCache contextCache;
+    private final Executor workers;
+    private final WebhookSpool spool;
+    private final WebhookDispatcher dispatcher;
 
-    public WebhookSender(JavaPlugin plugin) {
+    // Compiled on enable and reload, so sending never reads the config
+    private volatile RoutingRules routing;
+
+    public WebhookSender(JavaPlugin plugin, PlayerContextCache contextCache, Executor workers) {
         this.plugin = plugin;
+        this.contextCache = contextCache;
+        this.workers = workers;
+        this.spool = new WebhookSpool(new File(plugin.getDataFolder(), "spool"), plugin.getLogger());
+        this.dispatcher = new WebhookDispatcher(plugin.getLogger(), spool);
+        PluginMetrics.registerGauge("delivery_queue_depth", dispatcher::getQueueDepth);
+        PluginMetrics.registerGauge("delivery_sent_total", dispatcher::getSentEmbeds);
+        PluginMetrics.registerGauge("delivery_dropped_total", dispatcher::getDroppedEmbeds);
+        PluginMetrics.registerGauge("delivery_retried_total", dispatcher::getRetriedBatches);
+        PluginMetrics.registerGauge("delivery_in_flight", dispatcher::getInFlight);
+        PluginMetrics.registerGauge("delivery_spilled_total", dispatcher::getSpilledEmbeds);
+        PluginMetrics.registerGauge("spool_disk_bytes", spool::getDiskUsage);
+        PluginMetrics.registerGauge("spool_lost_total", spool::getLostRecords);
+        reload();
+
+        // Resend whatever was still undelivered when the server last stopped
+        spool.replay(dispatcher::enqueueReplayed);
     }
 
-    public void sendWebhook(String webhookUrl, ConfigurationSection template, Player player, String command, String discordMention, String group, Location loc) {
-        // NOTE: The CommandWebhookListener ensures both webhookUrl and template are not null/empty
-        // before calling this method.
-
-        // Embed fields
-        String title = template.getString("title", "");
-        String description = template.getString("description", "");
-        // Using a standard default color here, but configuration should define it.
-        int color = template.getInt("color", plugin.getConfig().getInt("embed_defaults.color", 5814783)); 
-        String footer = template.getString("footer", plugin.getConfig().getString("embed_defaults.footer_text", ""));
-        boolean includeTimestamp = template.getBoolean("include_timestamp", plugin.getConfig().getBoolean("embed_defaults.include_timestamp", true));
-        String footerIcon = plugin.getConfig().getString("embed_defaults.footer_icon_url", "");
-
-        boolean includeMainImage = template.getBoolean("include_image", false);
-        String mainImageUrl = template.getString("image_url", "");
-
-        boolean includeThumbnail = template.getBoolean("include_thumbnail", false);
-        String thumbnailUrl = template.getString("thumbnail_url", "");
-
-        // Replace placeholders
-        title = replacePlaceholders(title, player, command, discordMention, group, loc);
-        description = replacePlaceholders(description, player, command, discordMention, group, loc);
-        footer = replacePlaceholders(footer, player, command, discordMention, group, loc);
-        mainImageUrl = replacePlaceholders(mainImageUrl, player, command, discordMention, group, loc);
-        thumbnailUrl = replacePlaceholders(thumbnailUrl, player, command, discordMention, group, loc);
-
-        String timestamp = includeTimestamp ? DateTimeFormatter.ISO_INSTANT.format(Instant.now()) : null;
-
-        // Build JSON payload
-        StringBuilder json = new StringBuilder();
-        json.append("{\"embeds\":[{")
-            .append("\"author\":{\"name\":\"").append(escapeJson(plugin.getConfig().getString("embed_defaults.author_name", "Command Logs"))).append("\"},")
-            .append("\"title\":\"").append(escapeJson(title)).append("\",")
-            .append("\"description\":\"").append(escapeJson(description)).append("\",")
-            .append("\"color\":").append(color);
-
-        if (footer != null && !footer.isEmpty()) {
-            json.append(",\"footer\":{\"text\":\"").append(escapeJson(footer)).append("\"");
-            if (footerIcon != null && !footerIcon.isEmpty()) json.append(",\"icon_url\":\"").append(escapeJson(footerIcon)).append("\"");
-            json.append("}");
-        }
+    // Re-reads webhooks, templates and delivery settings, called on enable and on /commandwebhooklogger reload
+    @Override
+    public void reload() {
+        Map<String, EmbedTemplate> templates = EmbedTemplate.compileAll(plugin.getConfig());
+        routing = RoutingRules.compile(plugin.getConfig(), webhookUrls(plugin.getConfig()), templates, plugin.getLogger());
 
-        if (includeThumbnail && thumbnailUrl != null && !thumbnailUrl.isEmpty()) {
-            json.append(",\"thumbnail\":{\"url\":\"").append(escapeJson(thumbnailUrl)).append("\"}");
-        }
+        spool.configure(plugin.getConfig().getConfigurationSection("spool"));
+        dispatcher.configure(plugin.getConfig());
+    }
 
-        if (includeMainImage && mainImageUrl != null && !mainImageUrl.isEmpty()) {
-            json.append(",\"image\":{\"url\":\"").append(escapeJson(mainImageUrl)).append("\"}");
+    // The non-empty entries under webhooks, by name
+    static Map<String, String> webhookUrls(ConfigurationSection config) {
+        Map<String, String> urls = new HashMap<>();
+        ConfigurationSection webhooks = config.getConfigurationSection("webhooks");
+        if (webhooks != null) {
+            for (String key : webhooks.getKeys(false)) {
+                String url = webhooks.getString(key);
+                if (url != null && !url.isEmpty()) urls.put(key, url);
+            }
         }
+        return urls;
+    }
 
-        if (timestamp != null) json.append(",\"timestamp\":\"").append(timestamp).append("\"");
+    // Sends what is still queued, called from onDisable. Undelivered embeds stay in the spool.
+    @Override
+    public void shutdown() {
+        dispatcher.shutdown(plugin.getConfig().getLong("delivery.shutdown-timeout-ms", 5000));
+        spool.close();
+    }
 
-        json.append("}]}");
+    public WebhookDispatcher getDispatcher() {
+        return dispatcher;
+    }
 
-        // Send asynchronously to prevent blocking the main thread
-        sendRawWebhookAsync(webhookUrl, json.toString());
+    // True if a command with this result key may be sent anywhere (its own webhook or a rule's)
+    public boolean hasTarget(String resultKey) {
+        return routing.routes(resultKey);
     }
 
-    private String replacePlaceholders(String text, Player player, String command, String discordMention, String group, Location loc) {
-        if (text == null) return "";
-        return text.replace("%player%", player.getName())
-                   .replace("%command%", command)
-                   .replace("%discord_mention%", discordMention)
-                   .replace("%group%", group)
-                   .replace("%world%", loc.getWorld().getName())
-                   .replace("%x%", String.valueOf(loc.getBlockX()))
-                   .replace("%y%", String.valueOf(loc.getBlockY()))
-                   .replace("%z%", String.valueOf(loc.getBlockZ()))
-                   .replace("%error%", "");
+    @Override
+    public boolean wants(String resultKey) {
+        return hasTarget(resultKey);
     }
 
-    // New asynchronous method to prevent server lag
-    private void sendRawWebhookAsync(String webhookUrl, String payload) {
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            sendRawWebhook(webhookUrl, payload);
-        });
+    @Override
+    public void accept(CommandEvent event) {
+        sendWebhook(event);
     }
 
-    // Synchronous HTTP sender, now called exclusively from an async task
-    private void sendRawWebhook(String webhookUrl, String payload) {
-        HttpURLConnection conn = null;
-        try {
-            URL url = new URL(webhookUrl);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-
-            // Write payload
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(payload.getBytes(StandardCharsets.UTF_8));
-            }
+    /**
+     * Logs a finalized command. Only the routing check runs on the calling (main) thread,
+     * the Discord/group lookup and rendering happen on a worker thread.
+     */
+    public void sendWebhook(CommandEvent event) {
+        RoutingRules routing = this.routing;
+        if (!routing.routes(event.resultKey)) return;
+
+        // Rules can depend on the player's group, so routing happens after the lookup as well
+        workers.execute(() -> {
+            PlayerContextCache.PlayerContext context = event.source == CommandSource.PLAYER
+                    ? contextCache.get(event.playerId) : PlayerContextCache.PlayerContext.NONE;
+            TemplateValues values = new TemplateValues(event.source.key, event.playerName, event.command, context.discordMention, context.group,
+                    event.world, event.x, event.y, event.z, event.count, event.isSummary() ? formatWindow(event.windowMillis) : null);
+            routing.route(event, context.group, (webhookUrl, template) -> render(webhookUrl, template, values, event.resultKey));
+        });
+    }
 
-            int code = conn.getResponseCode();
-            
-            // Log for debugging
-            if (plugin.getConfig().getBoolean("debug", false)) {
-                plugin.getLogger().info("Webhook sent to " + webhookUrl + ". Response code: " + code);
-            }
+    private void render(String webhookUrl, EmbedTemplate template, TemplateValues values, String resultKey) {
+        // Render the embed object into the worker's buffer, the dispatcher wraps up to 10 of them into one message
+        long start = System.nanoTime();
+        JsonWriter json = JsonWriter.local();
+        int characters = template.render(json, values);
+        byte[] embed = json.toByteArray();
+        PluginMetrics.RENDER_TIME.record(System.nanoTime() - start);
 
-            // Check for Discord failure codes (e.g., 400 Bad Request, 404 Not Found)
-            if (code >= 400) {
-                String errorDetails = readErrorStream(conn);
-                plugin.getLogger().warning("Failed to send webhook to " + webhookUrl + ". Response code: " + code + ". Details: " + errorDetails);
-            }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to connect or send webhook to " + webhookUrl + ": " + e.getMessage());
-        } finally {
-            if (conn != null) {
-                conn.disconnect();
-            }
-        }
-    }
-    
-    // Helper to read the response body (used for error logging)
-    private String readErrorStream(HttpURLConnection conn) {
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(
-                 new InputStreamReader(conn.getErrorStream() != null ? conn.getErrorStream() : conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                response.append(line);
-            }
-        } catch (Exception e) {
-            response.append("Error reading response body: ").append(e.getMessage());
-        }
-        return response.toString();
+        // Queued and batched off the main thread by the dispatcher
+        dispatcher.enqueue(webhookUrl, embed, characters, resultKey);
     }
 
-    private String escapeJson(String text) {
-        if (text == null) return "";
-        // Proper JSON escaping: backslash, double quote, and newline
-        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    // "10s", "3m 20s"
+    static String formatWindow(long millis) {
+        long seconds = Math.max(1, (millis + 999) / 1000);
+        if (seconds < 60) return seconds + "s";
+        return (seconds / 60) + "m" + (seconds % 60 == 0 ? "" : " " + (seconds % 60) + "s");
     }
-}
\ No newline at end of file
+}
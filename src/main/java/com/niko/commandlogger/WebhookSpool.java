@@ -0,0 +1,353 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log for embeds that have not been delivered yet.
+ *
+ * Embeds are written to a memory-mapped segment file before they are queued and
+ * acknowledged (a status byte flipped in place) once Discord answered with a 2xx.
+ * Anything still unacknowledged when the server stops is replayed on the next start.
+ *
+ * Segment layout: an 8 byte header (magic, version) followed by records of
+ * [int length][byte state][int crc32][short url length][url][payload]. The length is
+ * written last, so a torn write at the end of a segment is simply not seen on replay.
+ * Segments whose records are all acknowledged are deleted right away; replay copies
+ * the surviving records into fresh segments, which compacts the spool on every start.
+ * An old segment is only deleted once its records are in a new segment and forced to disk,
+ * and replay is exempt from the disk budget, so it never discards records it has already
+ * handed out.
+ */
+final class WebhookSpool {
+
+    static final long NO_REF = -1L;
+
+    private static final int MAGIC = 0x43574C53; // "CWLS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 4;
+    private static final byte STATE_LIVE = 0;
+    private static final byte STATE_ACKED = 1;
+    private static final String SUFFIX = ".seg";
+
+    private final File directory;
+    private final Logger logger;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+
+    private boolean enabled;
+    private int segmentSize = 1024 * 1024;
+    private long maxDiskBytes = 64L * 1024 * 1024;
+    private Segment active;
+    private long nextSegmentId;
+    private long lostRecords;
+    private boolean replaying;
+
+    WebhookSpool(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    // Reads the "spool" section, called on enable and on /commandwebhooklogger reload
+    synchronized void configure(ConfigurationSection spool) {
+        enabled = spool == null || spool.getBoolean("enabled", true);
+        if (spool != null) {
+            segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(64, spool.getLong("segment-size-kb", 1024)) * 1024);
+            maxDiskBytes = Math.max(1, spool.getLong("max-disk-mb", 64)) * 1024 * 1024;
+        }
+    }
+
+    synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Feeds every unacknowledged record from previous runs to the consumer. The records
+     * are moved into new segments first, so the refs handed out are valid for ack().
+     */
+    synchronized void replay(ReplayConsumer consumer) {
+        if (!enabled) return;
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null || files.length == 0) return;
+        Arrays.sort(files);
+
+        for (File file : files) {
+            long id = parseSegmentId(file);
+            if (id >= nextSegmentId) nextSegmentId = id + 1;
+        }
+
+        int replayed = 0;
+        replaying = true;
+        try {
+            for (File file : files) {
+                if (parseSegmentId(file) < 0) continue;
+                // Segment by segment: its live records are copied into the active segment and forced to disk
+                // before the old file is deleted, so a crash during replay at worst replays them twice.
+                // This needs at most one segment of extra disk space, replay is exempt from the budget.
+                List<byte[]> bodies = readLiveRecords(file);
+                long[] refs = new long[bodies.size()];
+                boolean copied = true;
+                for (int i = 0; i < refs.length; i++) {
+                    refs[i] = appendBody(bodies.get(i));
+                    if (refs[i] == NO_REF) copied = false;
+                }
+                if (active != null) active.buffer.force();
+                if (copied) {
+                    deleteFile(file);
+                } else {
+                    logger.warning("Keeping spool segment " + file.getName() + ", not all of its records could be copied.");
+                }
+
+                for (int i = 0; i < refs.length; i++) {
+                    byte[] body = bodies.get(i);
+                    int urlLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                    String url = new String(body, 2, urlLength, StandardCharsets.UTF_8);
+                    byte[] payload = Arrays.copyOfRange(body, 2 + urlLength, body.length);
+                    consumer.accept(url, payload, refs[i]);
+                    replayed++;
+                }
+            }
+        } finally {
+            replaying = false;
+        }
+
+        if (replayed > 0) {
+            logger.info("Replaying " + replayed + " undelivered webhook embeds from the spool.");
+        }
+    }
+
+    // The bodies of the records of an old segment that were never acknowledged, stopping at a torn write
+    private List<byte[]> readLiveRecords(File file) {
+        List<byte[]> bodies = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                logger.warning("Ignoring unreadable spool segment " + file.getName());
+                return bodies;
+            }
+            int position = HEADER_SIZE;
+            while (position + RECORD_HEADER_SIZE <= buffer.limit()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.limit()) break;
+
+                byte[] body = new byte[length];
+                buffer.get(position + RECORD_HEADER_SIZE, body);
+                boolean live = buffer.get(position + 4) == STATE_LIVE;
+                if (live && checksum(body) == buffer.getInt(position + 5)) bodies.add(body);
+                position += RECORD_HEADER_SIZE + length;
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to replay spool segment " + file.getName() + ": " + e.getMessage());
+        }
+        return bodies;
+    }
+
+    /**
+     * Writes an embed to the log. Returns a ref for ack(), or NO_REF if the spool is
+     * disabled or the write failed (the embed is then only kept in memory).
+     */
+    synchronized long append(String url, byte[] payload) {
+        if (!enabled) return NO_REF;
+
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        if (urlBytes.length > 0xFFFF) return NO_REF;
+
+        byte[] body = new byte[2 + urlBytes.length + payload.length];
+        body[0] = (byte) (urlBytes.length >>> 8);
+        body[1] = (byte) urlBytes.length;
+        System.arraycopy(urlBytes, 0, body, 2, urlBytes.length);
+        System.arraycopy(payload, 0, body, 2 + urlBytes.length, payload.length);
+        return appendBody(body);
+    }
+
+    private long appendBody(byte[] body) {
+        int recordSize = RECORD_HEADER_SIZE + body.length;
+        try {
+            if (active == null || active.writePosition + recordSize + 4 > active.buffer.capacity()) {
+                rotate(recordSize);
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to open a new spool segment: " + e.getMessage());
+            return NO_REF;
+        }
+
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.writePosition;
+        buffer.put(position + RECORD_HEADER_SIZE, body);
+        buffer.putInt(position + 5, checksum(body));
+        buffer.put(position + 4, STATE_LIVE);
+        buffer.putInt(position, body.length); // commits the record
+
+        active.writePosition += recordSize;
+        active.liveRecords++;
+        return (active.id << 32) | position;
+    }
+
+    /**
+     * Reads the payload of a record that is still waiting for delivery, or returns null if it
+     * was acknowledged or discarded in the meantime. Used for embeds spilled out of memory.
+     */
+    synchronized byte[] read(long ref) {
+        if (ref == NO_REF) return null;
+        Segment segment = segments.get(ref >>> 32);
+        if (segment == null) return null;
+
+        int position = (int) ref;
+        if (segment.buffer.get(position + 4) != STATE_LIVE) return null;
+        int length = segment.buffer.getInt(position);
+        int urlLength = ((segment.buffer.get(position + RECORD_HEADER_SIZE) & 0xFF) << 8)
+                | (segment.buffer.get(position + RECORD_HEADER_SIZE + 1) & 0xFF);
+        byte[] payload = new byte[length - 2 - urlLength];
+        segment.buffer.get(position + RECORD_HEADER_SIZE + 2 + urlLength, payload);
+        return payload;
+    }
+
+    // Marks a record as delivered (or given up on). Unknown refs are ignored.
+    synchronized void ack(long ref) {
+        if (ref == NO_REF) return;
+        Segment segment = segments.get(ref >>> 32);
+        if (segment == null) return;
+
+        int position = (int) ref;
+        if (segment.buffer.get(position + 4) != STATE_LIVE) return;
+        segment.buffer.put(position + 4, STATE_ACKED);
+        segment.liveRecords--;
+
+        if (segment.liveRecords == 0 && segment != active) {
+            remove(segment);
+        }
+    }
+
+    synchronized long getDiskUsage() {
+        long total = 0;
+        for (Segment segment : segments.values()) total += segment.buffer.capacity();
+        return total;
+    }
+
+    synchronized long getLostRecords() {
+        return lostRecords;
+    }
+
+    // Flushes the mapped segments to disk. Unacknowledged records stay for the next replay.
+    synchronized void close() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            closeQuietly(segment);
+            if (segment.liveRecords == 0) deleteFile(segment.file);
+        }
+        segments.clear();
+        active = null;
+    }
+
+    private void rotate(int recordSize) throws IOException {
+        if (active != null) {
+            active.buffer.force();
+            if (active.liveRecords == 0) remove(active);
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        int size = Math.max(segmentSize, HEADER_SIZE + recordSize + 4);
+        // Replayed records were handed out already and fit on disk before, the budget applies to new ones
+        if (!replaying) enforceDiskBudget(size);
+
+        // Never reuse the name of a segment left over from an earlier run that has not been replayed
+        long id;
+        File file;
+        do {
+            id = nextSegmentId++;
+            file = new File(directory, String.format("%016d%s", id, SUFFIX));
+        } while (file.exists());
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+
+        active = new Segment(id, file, channel, buffer);
+        segments.put(id, active);
+    }
+
+    // Drops the oldest segments (and their undelivered records) until the new segment fits the budget
+    private void enforceDiskBudget(int newSegmentSize) {
+        long usage = getDiskUsage();
+        while (usage + newSegmentSize > maxDiskBytes && !segments.isEmpty()) {
+            Segment oldest = segments.firstEntry().getValue();
+            usage -= oldest.buffer.capacity();
+            lostRecords += oldest.liveRecords;
+            logger.warning("Webhook spool exceeded its disk budget, discarding " + oldest.liveRecords + " undelivered embeds.");
+            remove(oldest);
+        }
+    }
+
+    private void remove(Segment segment) {
+        segments.remove(segment.id);
+        if (segment == active) active = null;
+        closeQuietly(segment);
+        deleteFile(segment.file);
+    }
+
+    private int checksum(byte[] body) {
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static long parseSegmentId(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void deleteFile(File file) {
+        // A mapped file cannot be deleted on Windows until the mapping is garbage collected
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    interface ReplayConsumer {
+        void accept(String url, byte[] payload, long ref);
+    }
+
+    private static final class Segment {
+        final long id;
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int writePosition = HEADER_SIZE;
+        int liveRecords;
+
+        Segment(long id, File file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
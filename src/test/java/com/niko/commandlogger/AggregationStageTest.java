@@ -0,0 +1,82 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregationStageTest {
+
+    private static final UUID STEVE = UUID.randomUUID();
+
+    private final List<CommandEvent> sent = new ArrayList<>();
+    private final AggregationStage stage = new AggregationStage(() -> YamlConfiguration.loadConfiguration(new StringReader("""
+            enabled: true
+            window-seconds: 10
+            thresholds:
+              executed: 2
+            """)), new CommandSink() {
+        @Override
+        public boolean wants(String resultKey) {
+            return true;
+        }
+
+        @Override
+        public void accept(CommandEvent event) {
+            sent.add(event);
+        }
+
+        @Override
+        public void reload() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    });
+
+    private static CommandEvent command(String command, String resultKey) {
+        return new CommandEvent(CommandSource.PLAYER, STEVE, "Steve", command, resultKey, "world", 0, 64, 0, 0L);
+    }
+
+    @Test
+    void collapsesWhatGoesOverTheThreshold() {
+        for (int i = 0; i < 5; i++) stage.accept(command("/spawn", "executed"));
+        stage.accept(command("/SPAWN now", "executed")); // same label
+        assertEquals(2, sent.size());
+
+        stage.flush();
+        assertEquals(3, sent.size());
+        CommandEvent summary = sent.get(2);
+        assertTrue(summary.isSummary());
+        assertEquals(6, summary.count);
+    }
+
+    @Test
+    void resultsWithoutThresholdPassThrough() {
+        for (int i = 0; i < 5; i++) stage.accept(command("/spawn", "no-permission"));
+        stage.flush();
+        assertEquals(5, sent.size());
+        assertFalse(sent.stream().anyMatch(CommandEvent::isSummary));
+    }
+
+    @Test
+    void summariesFromElsewhereJoinTheWindow() {
+        stage.accept(command("/spawn", "executed"));
+        // Another server collapsed 10 uses already: no more one by one, one summary for all
+        stage.accept(command("/spawn", "executed").summarize(10, 5000));
+        stage.accept(command("/spawn", "executed"));
+        assertEquals(1, sent.size());
+
+        stage.flush();
+        assertEquals(2, sent.size());
+        assertEquals(12, sent.get(1).count);
+    }
+}
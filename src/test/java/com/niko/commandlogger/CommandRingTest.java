@@ -0,0 +1,83 @@
+package com.niko.commandlogger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandRingTest {
+
+    private final CommandRing ring = new CommandRing();
+
+    private PendingCommand add(String command) {
+        PendingCommand pending = new PendingCommand(null, command, ring.nextSequence(), null, 0);
+        assertNull(ring.add(pending));
+        return pending;
+    }
+
+    @Test
+    void findsOldestAndNewestPending() {
+        assertTrue(ring.isEmpty());
+        assertNull(ring.oldestPending());
+        assertNull(ring.newestPending());
+
+        PendingCommand first = add("/one");
+        PendingCommand second = add("/two");
+        PendingCommand third = add("/three");
+        assertEquals(2, third.sequence);
+        assertSame(first, ring.oldestPending());
+        assertSame(third, ring.newestPending());
+
+        // Decided commands are skipped, the newest one only counts while it waits itself
+        first.decide(PendingCommand.Result.NO_PERMISSION);
+        assertSame(second, ring.oldestPending());
+        third.decide(PendingCommand.Result.EXECUTED);
+        assertNull(ring.newestPending());
+    }
+
+    @Test
+    void removingEntriesAdvancesTheHead() {
+        PendingCommand first = add("/one");
+        PendingCommand second = add("/two");
+        PendingCommand third = add("/three");
+
+        // A hole in the middle keeps the head where it is
+        ring.remove(second);
+        assertSame(first, ring.oldestPending());
+        ring.remove(first);
+        assertSame(third, ring.oldestPending());
+        ring.remove(third);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.oldestPending());
+
+        ring.remove(null);
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void fullRingEvictsTheOldest() {
+        PendingCommand first = add("/0");
+        for (int i = 1; i < 16; i++) add("/" + i);
+
+        PendingCommand overflow = new PendingCommand(null, "/16", ring.nextSequence(), null, 0);
+        assertSame(first, ring.add(overflow));
+        assertEquals("/1", ring.oldestPending().command);
+        assertSame(overflow, ring.newestPending());
+    }
+
+    @Test
+    void findsWatchedCommands() {
+        PendingCommand first = add("/one");
+        PendingCommand second = add("/two");
+        assertNull(ring.oldestWatched());
+
+        first.decide(PendingCommand.Result.EXECUTED);
+        second.decide(PendingCommand.Result.EXECUTED);
+        second.watch();
+        assertSame(second, ring.oldestWatched());
+        assertTrue(second.unwatch());
+        assertNull(ring.oldestWatched());
+    }
+}
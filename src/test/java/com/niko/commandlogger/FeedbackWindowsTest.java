@@ -0,0 +1,125 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeedbackWindowsTest {
+
+    private static final int DEFAULT_TICKS = 10;
+
+    @TempDir
+    File dataFolder;
+
+    private FeedbackWindows windows(String config) {
+        FeedbackWindows windows = new FeedbackWindows(dataFolder, Logger.getLogger("FeedbackWindowsTest"));
+        windows.configure(YamlConfiguration.loadConfiguration(new StringReader(config)), DEFAULT_TICKS);
+        return windows;
+    }
+
+    private static void record(FeedbackWindows windows, String label, int ticks, int times) {
+        for (int i = 0; i < times; i++) windows.recordFeedback(label, ticks);
+    }
+
+    @Test
+    void usesTheDefaultWithoutEnoughHistory() {
+        FeedbackWindows windows = windows("min-samples: 20");
+        assertEquals(DEFAULT_TICKS, windows.windowTicks("spawn"));
+        assertEquals(DEFAULT_TICKS, windows.windowTicks(null));
+
+        record(windows, "spawn", 2, 19);
+        assertEquals(DEFAULT_TICKS, windows.windowTicks("spawn"));
+        record(windows, "spawn", 2, 1);
+        assertEquals(3, windows.windowTicks("spawn"));
+
+        FeedbackWindows fixed = windows("adaptive: false");
+        record(fixed, "spawn", 2, 100);
+        assertFalse(fixed.isAdaptive());
+        assertEquals(DEFAULT_TICKS, fixed.windowTicks("spawn"));
+    }
+
+    @Test
+    void waitsForTheNinetyNinthPercentile() {
+        FeedbackWindows windows = windows("min-samples: 20");
+        // One late packet in a hundred is still covered, two are not
+        record(windows, "warp", 3, 99);
+        record(windows, "warp", 15, 1);
+        assertEquals(4, windows.windowTicks("warp"));
+        record(windows, "warp", 15, 1);
+        assertEquals(16, windows.windowTicks("warp"));
+
+        // Feedback in the tick of the command still needs the next tick
+        record(windows, "home", 0, 50);
+        assertEquals(1, windows.windowTicks("home"));
+    }
+
+    @Test
+    void commandsWithoutFeedbackNeedNoWait() {
+        FeedbackWindows windows = windows("min-samples: 20\nmin-ticks: 2");
+        for (int i = 0; i < 200; i++) windows.recordNoFeedback("spawn");
+        assertEquals(2, windows.windowTicks("spawn"));
+
+        // Rare feedback below 1% does not stretch the window
+        windows.recordFeedback("spawn", 12);
+        assertEquals(2, windows.windowTicks("spawn"));
+        record(windows, "spawn", 12, 10);
+        assertEquals(13, windows.windowTicks("spawn"));
+    }
+
+    @Test
+    void clampsToTheConfiguredBounds() {
+        FeedbackWindows windows = windows("min-samples: 20\nmin-ticks: 5\nmax-ticks: 20");
+        record(windows, "fast", 0, 50);
+        record(windows, "slow", 45, 50);
+        record(windows, "later", 500, 50);
+        assertEquals(5, windows.windowTicks("fast"));
+        assertEquals(20, windows.windowTicks("slow"));
+        assertEquals(20, windows.windowTicks("later"));
+        assertEquals(20, windows.watchTicks());
+
+        // Changed bounds apply to what was already learned
+        windows.configure(YamlConfiguration.loadConfiguration(new StringReader("min-samples: 20\nmax-ticks: 100")), DEFAULT_TICKS);
+        assertEquals(1, windows.windowTicks("fast"));
+        assertEquals(46, windows.windowTicks("slow"));
+        assertEquals(60, windows.windowTicks("later")); // never longer than the three seconds the histogram covers
+    }
+
+    @Test
+    void followsCommandsThatGetFaster() {
+        FeedbackWindows windows = windows("min-samples: 20\nmax-ticks: 60");
+        record(windows, "kit", 30, 1000);
+        assertEquals(31, windows.windowTicks("kit"));
+
+        // Halving the counts ages the slow history out
+        record(windows, "kit", 1, 10_000);
+        assertEquals(2, windows.windowTicks("kit"));
+    }
+
+    @Test
+    void savesAndLoadsTheHistograms() {
+        FeedbackWindows windows = windows("min-samples: 20");
+        File file = new File(dataFolder, "feedback-windows.yml");
+        windows.save(Runnable::run);
+        assertFalse(file.exists(), "nothing to save yet");
+
+        record(windows, "warp", 6, 30);
+        for (int i = 0; i < 30; i++) windows.recordNoFeedback("spawn");
+        record(windows, "plugin.dotted", 4, 30);
+        windows.save(Runnable::run);
+        assertTrue(file.exists());
+
+        FeedbackWindows loaded = windows("min-samples: 20");
+        assertEquals(2, loaded.size()); // labels with a dot are not saved
+        assertEquals(7, loaded.windowTicks("warp"));
+        assertEquals(1, loaded.windowTicks("spawn"));
+        assertEquals(DEFAULT_TICKS, loaded.windowTicks("plugin.dotted"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.niko.commandlogger;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ForwardingCodecTest {
+
+    private static ForwardingCodec.FrameReader reader(byte[]... frames) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] frame : frames) stream.write(frame, 0, frame.length);
+        return new ForwardingCodec.FrameReader(new ByteArrayInputStream(stream.toByteArray()));
+    }
+
+    @Test
+    void helloAndAckRoundTrip() throws IOException {
+        ForwardingCodec.FrameWriter out = new ForwardingCodec.FrameWriter(ForwardingCodec.HELLO);
+        ForwardingCodec.writeHello(out, "lobby-1", -42L);
+        byte[] hello = out.toFrame();
+        ForwardingCodec.writeAck(out, Long.MAX_VALUE);
+        byte[] ack = out.toFrame();
+
+        ForwardingCodec.FrameReader in = reader(hello, ack);
+        assertEquals(ForwardingCodec.HELLO, in.next());
+        assertEquals(ForwardingCodec.MAGIC, in.readFixedInt());
+        assertEquals(ForwardingCodec.VERSION, in.readByte());
+        assertEquals("lobby-1", in.readString());
+        assertEquals(-42L, in.readFixedLong());
+        assertEquals(ForwardingCodec.ACK, in.next());
+        assertEquals(Long.MAX_VALUE, in.readFixedLong());
+        assertEquals(-1, in.next());
+    }
+
+    @Test
+    void eventsRoundTrip() throws IOException {
+        UUID id = UUID.randomUUID();
+        CommandEvent player = new CommandEvent(CommandSource.PLAYER, id, "Steve", "/say \"héllo\" ☃", "no-permission",
+                "world_nether", -30_000_000, -64, 29_999_999, 1_700_000_000_123L);
+        CommandEvent summary = new CommandEvent(CommandSource.COMMAND_BLOCK, new UUID(0, 0), "@", "/tp @p 0 64 0", "executed",
+                null, 0, 0, 0, 5L).summarize(37, 10_000);
+
+        ForwardingCodec.FrameWriter out = new ForwardingCodec.FrameWriter(ForwardingCodec.EVENTS);
+        ForwardingCodec.startEvents(out, 1L << 40, 2);
+        ForwardingCodec.writeEvent(out, player, "<@123>", "admin");
+        ForwardingCodec.writeEvent(out, summary, null, null);
+
+        ForwardingCodec.FrameReader in = reader(out.toFrame());
+        assertEquals(ForwardingCodec.EVENTS, in.next());
+        assertEquals(1L << 40, in.readFixedLong());
+        assertEquals(2, in.readVarLong());
+
+        ForwardingCodec.ForwardedEvent first = in.readEvent();
+        assertEquals(CommandSource.PLAYER, first.event.source);
+        assertEquals(id, first.event.playerId);
+        assertEquals("Steve", first.event.playerName);
+        assertEquals("/say \"héllo\" ☃", first.event.command);
+        assertEquals("no-permission", first.event.resultKey);
+        assertEquals("world_nether", first.event.world);
+        assertEquals(-30_000_000, first.event.x);
+        assertEquals(-64, first.event.y);
+        assertEquals(29_999_999, first.event.z);
+        assertEquals(1_700_000_000_123L, first.event.timestamp);
+        assertEquals(1, first.event.count);
+        assertEquals("<@123>", first.discordMention);
+        assertEquals("admin", first.group);
+
+        ForwardingCodec.ForwardedEvent second = in.readEvent();
+        assertEquals(CommandSource.COMMAND_BLOCK, second.event.source);
+        assertNull(second.event.world);
+        assertTrue(second.event.isSummary());
+        assertEquals(37, second.event.count);
+        assertEquals(10_000, second.event.windowMillis);
+        assertNull(second.discordMention);
+        assertNull(second.group);
+    }
+
+    @Test
+    void rejectsBrokenFrames() throws IOException {
+        // A length beyond the limit
+        ForwardingCodec.FrameReader oversized = new ForwardingCodec.FrameReader(new ByteArrayInputStream(new byte[]{0x7F, 0, 0, 0, 1}));
+        assertThrows(IOException.class, oversized::next);
+
+        // A string longer than what is left of the frame
+        ForwardingCodec.FrameWriter out = new ForwardingCodec.FrameWriter(ForwardingCodec.HELLO);
+        out.writeVarLong(100);
+        ForwardingCodec.FrameReader truncated = reader(out.toFrame());
+        assertEquals(ForwardingCodec.HELLO, truncated.next());
+        assertThrows(IOException.class, truncated::readString);
+        assertThrows(IOException.class, truncated::readByte);
+    }
+
+    @Test
+    void parsesAddresses() throws IOException {
+        assertEquals(new InetSocketAddress("127.0.0.1", 25590), ForwardingCodec.parseAddress("127.0.0.1:25590"));
+        assertEquals(UnixDomainSocketAddress.of("/run/cwl.sock"), ForwardingCodec.parseAddress("unix:/run/cwl.sock"));
+        assertThrows(IOException.class, () -> ForwardingCodec.parseAddress("localhost"));
+    }
+}
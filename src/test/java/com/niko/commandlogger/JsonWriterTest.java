@@ -0,0 +1,146 @@
+package com.niko.commandlogger;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonWriterTest {
+
+    private static String written(JsonWriter writer) {
+        return new String(writer.buffer(), 0, writer.length(), StandardCharsets.UTF_8);
+    }
+
+    private static String limited(CharSequence text, int maxCodePoints) {
+        JsonWriter writer = new JsonWriter();
+        writer.beginText(maxCodePoints);
+        writer.text(text);
+        writer.endText();
+        return written(writer);
+    }
+
+    @Test
+    void escapesWhatRfc8259Requires() {
+        JsonWriter writer = new JsonWriter().string("say \"hi\" \\ \n\r\t\b\f \u0001\u001f\u007f é");
+        assertEquals("\"say \\\"hi\\\" \\\\ \\n\\r\\t\\b\\f \\u0001\\u001f\u007f é\"", written(writer));
+        assertEquals("null", written(new JsonWriter().string(null)));
+    }
+
+    @Test
+    void encodesUtf8AndReplacesLoneSurrogates() {
+        assertEquals("\"a😀b\"", written(new JsonWriter().string("a😀b")));
+        assertEquals("\"a�b�\"", written(new JsonWriter().string("a\uD83Db\uDE00")));
+        assertEquals("\"��\"", written(new JsonWriter().string("\uDE00\uD83D")));
+    }
+
+    @Test
+    void writesNumbers() {
+        JsonWriter writer = new JsonWriter();
+        writer.number(0).raw(",").number(-7).raw(",").number(1234567890123L).raw(",").number(Long.MIN_VALUE).raw(",").number(Long.MAX_VALUE);
+        assertEquals("0,-7,1234567890123,-9223372036854775808,9223372036854775807", written(writer));
+
+        writer.reset();
+        writer.beginText(Integer.MAX_VALUE);
+        writer.text(-42);
+        writer.text(Long.MIN_VALUE);
+        assertEquals(23, writer.endText());
+        assertEquals("-42-9223372036854775808", written(writer));
+    }
+
+    @Test
+    void truncatesOnCodePointsWithAnEllipsis() {
+        assertEquals("abcde", limited("abcde", 5));
+        assertEquals("abcd…", limited("abcdefg", 5));
+        // An emoji is one code point but two chars, it is never cut in half
+        assertEquals("😀😀…", limited("😀😀😀😀", 3));
+        // Escapes count as the one code point they stand for
+        assertEquals("\\\"\\n…", limited("\"\n\"\n", 3));
+        assertEquals("", limited("abc", 0));
+
+        JsonWriter writer = new JsonWriter();
+        writer.beginText(4);
+        writer.text("ab");
+        writer.text("cd");
+        writer.text("ef");
+        assertEquals(4, writer.endText());
+        assertEquals("abc…", written(writer));
+    }
+
+    @Test
+    void preparedFragmentsHonorTheLimit() {
+        String original = "Steve \"the builder\"";
+        byte[] encoded = JsonWriter.encode(original);
+        int codePoints = JsonWriter.codePoints(original);
+
+        JsonWriter writer = new JsonWriter();
+        writer.beginText(100);
+        writer.text(encoded, codePoints, original);
+        assertEquals(codePoints, writer.endText());
+        assertEquals("Steve \\\"the builder\\\"", written(writer));
+
+        // Too long for what is left: escaped from the original and cut like any other text
+        writer.reset();
+        writer.beginText(8);
+        writer.text("> ");
+        writer.text(encoded, codePoints, original);
+        assertEquals(8, writer.endText());
+        assertEquals("> Steve…", written(writer));
+    }
+
+    @Test
+    void outputParsesBackToTheInput() {
+        Random random = new Random(11);
+        JsonWriter writer = new JsonWriter();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; j--) {
+                switch (random.nextInt(4)) {
+                    case 0 -> text.append((char) random.nextInt(0x80));
+                    case 1 -> text.append((char) random.nextInt(0x800));
+                    case 2 -> text.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    default -> text.append((char) random.nextInt(0x10000)); // sometimes a lone surrogate
+                }
+            }
+            writer.reset();
+            writer.string(text);
+            assertEquals(withoutLoneSurrogates(text), JsonParser.parseString(written(writer)).getAsString());
+        }
+    }
+
+    private static String withoutLoneSurrogates(CharSequence text) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                result.append(c).append(text.charAt(++i));
+            } else {
+                result.append(Character.isSurrogate(c) ? '\uFFFD' : c);
+            }
+        }
+        return result.toString();
+    }
+
+    @Test
+    void growsAndRollsBack() {
+        JsonWriter writer = new JsonWriter();
+        writer.string("x".repeat(100_000));
+        assertEquals(100_002, writer.length());
+        assertTrue(writer.buffer().length >= 100_002);
+
+        // A reset drops a buffer this large again
+        writer.reset();
+        assertEquals(0, writer.length());
+        assertTrue(writer.buffer().length < 100_000);
+
+        writer.raw("{\"a\":1");
+        int mark = writer.length();
+        writer.raw(",\"b\":");
+        writer.setLength(mark);
+        writer.raw("}");
+        assertEquals("{\"a\":1}", new String(writer.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
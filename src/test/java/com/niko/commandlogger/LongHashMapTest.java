@@ -0,0 +1,80 @@
+package com.niko.commandlogger;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongHashMapTest {
+
+    @Test
+    void putGetAndReplace() {
+        LongHashMap<String> map = new LongHashMap<>(4);
+        map.put(1, "one");
+        map.put(-1, "minus one");
+        map.put(Long.MIN_VALUE, "min");
+        map.put(1, "uno");
+        assertEquals(3, map.size());
+        assertEquals("uno", map.get(1));
+        assertEquals("minus one", map.get(-1));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertNull(map.get(2));
+        assertThrows(IllegalArgumentException.class, () -> map.put(3, null));
+    }
+
+    @Test
+    void removeKeepsProbeChainsIntact() {
+        // A table kept close to half full, so removals often hit the middle of a probe chain
+        LongHashMap<Long> map = new LongHashMap<>(64);
+        for (long key = 0; key < 64 * 16; key += 16) map.put(key, key);
+        for (long key = 0; key < 64 * 16; key += 32) map.remove(key);
+        for (long key = 0; key < 64 * 16; key += 16) {
+            if (key % 32 == 0) assertNull(map.get(key));
+            else assertEquals(Long.valueOf(key), map.get(key));
+        }
+        assertEquals(32, map.size());
+        map.remove(12345);
+        assertEquals(32, map.size());
+    }
+
+    @Test
+    void behavesLikeHashMap() {
+        Random random = new Random(7);
+        LongHashMap<Integer> map = new LongHashMap<>(8);
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // A small key range so puts, replaces and removes all hit existing keys
+            long key = random.nextInt(2000) - 1000L;
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -1000; key < 1000; key++) assertEquals(expected.get(key), map.get(key));
+
+        Map<Long, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        LongHashMap<String> map = new LongHashMap<>(8);
+        for (long key = 0; key < 100; key++) map.put(key, "v" + key);
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(5));
+        map.put(5, "again");
+        assertEquals("again", map.get(5));
+        assertEquals(1, map.size());
+    }
+}
@@ -0,0 +1,81 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhraseMatcherTest {
+
+    private static final int NO_PERMISSION = 0;
+    private static final int UNKNOWN = 1;
+
+    private final PhraseMatcher matcher = PhraseMatcher.compile(List.of(
+            List.of("no permission", "you do not have permission", "denied"),
+            List.of("unknown command", "unknown or incomplete command")));
+
+    @Test
+    void matchesIgnoringCase() {
+        assertEquals(NO_PERMISSION, matcher.match("You Do NOT have PERMISSION to do that."));
+        assertEquals(UNKNOWN, matcher.match("Unknown command. Type \"/help\" for help."));
+        assertEquals(PhraseMatcher.NO_MATCH, matcher.match("anyone up for the nether later?"));
+        assertEquals(PhraseMatcher.NO_MATCH, matcher.match(""));
+    }
+
+    @Test
+    void skipsColorCodes() {
+        assertEquals(NO_PERMISSION, matcher.match("§c§lError: §r§cNo §cpermission§7."));
+        assertEquals(NO_PERMISSION, matcher.match("no§x permission"));
+        // The character after a section sign is a code, not text, even when it is a space
+        assertEquals(PhraseMatcher.NO_MATCH, matcher.match("no§ permission"));
+    }
+
+    @Test
+    void followsFailureLinks() {
+        // "unknown " starts the longer phrase, then the shorter one has to be found without backtracking
+        assertEquals(UNKNOWN, matcher.match("unknown or unknown command"));
+        assertEquals(UNKNOWN, matcher.match("Unknown or incomplete command, see below for error"));
+        assertEquals(NO_PERMISSION, matcher.match("you do not have no permission"));
+    }
+
+    @Test
+    void earlierCategoryWins() {
+        assertEquals(NO_PERMISSION, matcher.match("Unknown command, or permission denied"));
+        assertEquals(NO_PERMISSION, matcher.match("Denied: unknown command"));
+    }
+
+    @Test
+    void matchesAcrossPieces() {
+        PhraseMatcher.Scan scan = matcher.startScan();
+        assertFalse(scan.feed("§cYou do not have "));
+        assertEquals(PhraseMatcher.NO_MATCH, scan.result());
+        assertTrue(scan.sawText());
+        // The section sign ends one piece, its code starts the next
+        assertFalse(scan.feed("§"));
+        assertTrue(scan.feed("lpermission"));
+        assertEquals(NO_PERMISSION, scan.result());
+
+        scan = matcher.startScan();
+        assertEquals(PhraseMatcher.NO_MATCH, scan.result());
+        assertFalse(scan.sawText());
+    }
+
+    @Test
+    void readsPlainListsAndLocaleSections() {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("phrases.no-permission.en", List.of("no permission"));
+        config.set("phrases.no-permission.de", List.of("keine Berechtigung"));
+        config.set("phrases.unknown-command", List.of("unbekannter befehl"));
+
+        PhraseMatcher fromConfig = PhraseMatcher.fromConfig(config.getConfigurationSection("phrases"),
+                "no-permission", "unknown-command", "missing-category");
+        assertEquals(NO_PERMISSION, fromConfig.match("Dafür hast du KEINE BERECHTIGUNG."));
+        assertEquals(NO_PERMISSION, fromConfig.match("No permission."));
+        assertEquals(UNKNOWN, fromConfig.match("Unbekannter Befehl."));
+        assertEquals(PhraseMatcher.NO_MATCH, fromConfig.match("Unknown command."));
+    }
+}
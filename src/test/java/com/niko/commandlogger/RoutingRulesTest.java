@@ -0,0 +1,126 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutingRulesTest {
+
+    private static final String EXECUTED = "https://discord.test/executed";
+    private static final String NO_PERMISSION = "https://discord.test/no-permission";
+    private static final String STAFF = "https://discord.test/staff";
+    private static final String NETHER = "https://discord.test/nether";
+
+    private static final String CONFIG = """
+            templates:
+              executed:
+                title: "%player% ran %command%"
+              no-permission:
+                title: "%player% tried %command%"
+            rules:
+              - name: private-messages
+                commands: [msg, tell, r]
+                action: ignore
+              - name: staff-alerts
+                commands: [op, "lp*", /gamemode]
+                webhook: staff
+                continue: true
+              - name: nether
+                worlds: [world_nether]
+                results: [executed]
+                webhook: https://discord.test/nether
+              - name: moderators
+                commands: [ban]
+                groups: [Mod]
+                sources: [player]
+                webhook: staff
+              - name: broken
+                commands: [kick]
+                webhook: nowhere
+            """;
+
+    private final RoutingRules routing = compile(CONFIG);
+
+    private static RoutingRules compile(String yaml) {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(new StringReader(yaml));
+        Map<String, String> webhookUrls = Map.of("executed", EXECUTED, "no-permission", NO_PERMISSION, "staff", STAFF);
+        return RoutingRules.compile(config, webhookUrls, EmbedTemplate.compileAll(config), Logger.getLogger("RoutingRulesTest"));
+    }
+
+    private List<String> route(String command, String resultKey, String world, String group) {
+        return route(CommandSource.PLAYER, command, resultKey, world, group);
+    }
+
+    private List<String> route(CommandSource source, String command, String resultKey, String world, String group) {
+        List<String> urls = new ArrayList<>();
+        CommandEvent event = new CommandEvent(source, UUID.randomUUID(), "Steve", command, resultKey, world, 0, 64, 0, 0L);
+        routing.route(event, group, (url, template) -> urls.add(url));
+        return urls;
+    }
+
+    @Test
+    void withoutAMatchingRuleTheResultDecides() {
+        assertEquals(List.of(EXECUTED), route("/spawn", "executed", "world", "default"));
+        assertEquals(List.of(NO_PERMISSION), route("/spawn", "no-permission", "world", "default"));
+        // No webhook and no template for unknown commands
+        assertEquals(List.of(), route("/spwan", "unknown-command", "world", "default"));
+    }
+
+    @Test
+    void ignoreRulesDropTheCommand() {
+        assertEquals(List.of(), route("/msg Alex hi", "executed", "world", "default"));
+        assertEquals(List.of(), route("/minecraft:tell Alex hi", "executed", "world_nether", "default"));
+        assertEquals(List.of(), route("/R hi", "no-permission", "world", "default"));
+    }
+
+    @Test
+    void continueAlsoUsesTheNextTargets() {
+        assertEquals(List.of(STAFF, EXECUTED), route("/op Alex", "executed", "world", "default"));
+        assertEquals(List.of(STAFF, NETHER), route("/gamemode creative", "executed", "world_nether", "default"));
+    }
+
+    @Test
+    void prefixPatternsMatchLongerLabels() {
+        assertEquals(List.of(STAFF, EXECUTED), route("/lp user Alex parent set admin", "executed", "world", "default"));
+        assertEquals(List.of(STAFF, EXECUTED), route("/LuckPerms:LPB", "executed", "world", "default"));
+        assertEquals(List.of(EXECUTED), route("/l", "executed", "world", "default"));
+    }
+
+    @Test
+    void dimensionsRestrictRules() {
+        assertEquals(List.of(NETHER), route("/home", "executed", "world_nether", "default"));
+        assertEquals(List.of(NO_PERMISSION), route("/home", "no-permission", "world_nether", "default"));
+
+        // Groups are compared without case, sources by their key
+        assertEquals(List.of(STAFF), route("/ban Alex", "executed", "world", "mod"));
+        assertEquals(List.of(EXECUTED), route("/ban Alex", "executed", "world", "admin"));
+        assertEquals(List.of(EXECUTED), route(CommandSource.CONSOLE, "ban Alex", "executed", null, "mod"));
+    }
+
+    @Test
+    void invalidRulesAreSkipped() {
+        assertEquals(4, routing.size());
+        assertEquals(List.of(EXECUTED), route("/kick Alex", "executed", "world", "default"));
+    }
+
+    @Test
+    void knowsWhichResultsGoAnywhere() {
+        assertTrue(routing.routes("executed"));
+        assertTrue(routing.routes("unknown-command")); // staff-alerts takes every result
+
+        RoutingRules onlyDefaults = compile(CONFIG.substring(0, CONFIG.indexOf("rules:")));
+        assertEquals(0, onlyDefaults.size());
+        assertTrue(onlyDefaults.routes("no-permission"));
+        assertFalse(onlyDefaults.routes("unknown-command"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.niko.commandlogger;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickWheelTest {
+
+    private static final class Timer extends TickWheel.Entry {
+        final String name;
+        long firedAt = -1;
+
+        Timer(String name) {
+            this.name = name;
+        }
+    }
+
+    private final TickWheel wheel = new TickWheel();
+    private long tick;
+
+    // Advances the wheel by the given number of ticks and returns the names of what came due, in tick order
+    private List<String> advance(int ticks) {
+        List<String> due = new ArrayList<>();
+        for (int i = 0; i < ticks; i++) {
+            tick++;
+            wheel.<Timer>advance(timer -> {
+                timer.firedAt = tick;
+                due.add(timer.name);
+            });
+        }
+        return due;
+    }
+
+    @Test
+    void firesEntriesOnTheirTick() {
+        Timer a = new Timer("a");
+        Timer b = new Timer("b");
+        Timer c = new Timer("c");
+        wheel.schedule(a, 3);
+        wheel.schedule(b, 1);
+        wheel.schedule(c, 3);
+        assertEquals(3, wheel.size());
+
+        assertEquals(List.of("b"), advance(2));
+        assertEquals(1, b.firedAt);
+        List<String> due = advance(1);
+        assertEquals(2, due.size());
+        assertTrue(due.containsAll(List.of("a", "c")));
+        assertEquals(3, a.firedAt);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void delaysBelowOneTickRunOnTheNextTick() {
+        wheel.schedule(new Timer("zero"), 0);
+        wheel.schedule(new Timer("negative"), -5);
+        assertEquals(2, advance(1).size());
+    }
+
+    @Test
+    void longDelaysWaitForLaterLaps() {
+        Timer late = new Timer("late");
+        Timer sameSlot = new Timer("same-slot");
+        wheel.schedule(late, 64 * 2 + 5);
+        wheel.schedule(sameSlot, 5);
+
+        assertEquals(List.of("same-slot"), advance(5));
+        assertEquals(List.of(), advance(64 * 2 - 1));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("late"), advance(1));
+        assertEquals(64 * 2 + 5, late.firedAt);
+    }
+
+    @Test
+    void entriesCanBeScheduledAgainWhenDue() {
+        Timer repeating = new Timer("repeating");
+        wheel.schedule(repeating, 64);
+        List<Long> fired = new ArrayList<>();
+        for (int i = 0; i < 64 * 3; i++) {
+            tick++;
+            wheel.<Timer>advance(timer -> {
+                fired.add(tick);
+                // A full lap puts it back into the slot that is being processed
+                wheel.schedule(timer, 64);
+            });
+        }
+        assertEquals(List.of(64L, 128L, 192L), fired);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void drainReturnsEverything() {
+        wheel.schedule(new Timer("a"), 1);
+        wheel.schedule(new Timer("b"), 30);
+        wheel.schedule(new Timer("c"), 500);
+        List<String> drained = new ArrayList<>();
+        wheel.<Timer>drain(timer -> drained.add(timer.name));
+        assertEquals(3, drained.size());
+        assertEquals(0, wheel.size());
+        assertEquals(List.of(), advance(600));
+    }
+}
@@ -0,0 +1,27 @@
+package com.niko.commandlogger;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class WebhookHttpClientTest {
+
+    @Test
+    void requestsFailRightAwayAfterShutdown() {
+        WebhookHttpClient client = new WebhookHttpClient();
+        client.shutdown();
+
+        byte[] payload = "{}".getBytes(StandardCharsets.UTF_8);
+        // Used to spin forever looking for a client that was not retired
+        WebhookHttpClient.Response response = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> client.postJson("http://127.0.0.1:1/webhook", payload, payload.length));
+        assertFalse(response.isSuccess());
+        assertEquals(-1, response.status);
+        assertEquals("Shut down", response.body);
+    }
+}
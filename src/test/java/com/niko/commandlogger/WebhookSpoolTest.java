@@ -0,0 +1,194 @@
+package com.niko.commandlogger;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebhookSpoolTest {
+
+    private static final String URL = "https://discord.com/api/webhooks/1/token";
+
+    @TempDir
+    Path directory;
+
+    private final List<WebhookSpool> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeSpools() {
+        opened.forEach(WebhookSpool::close);
+    }
+
+    private WebhookSpool open(int segmentSizeKb, int maxDiskMb) {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("segment-size-kb", segmentSizeKb);
+        config.set("max-disk-mb", maxDiskMb);
+        WebhookSpool spool = new WebhookSpool(directory.toFile(), Logger.getLogger("WebhookSpoolTest"));
+        spool.configure(config);
+        opened.add(spool);
+        return spool;
+    }
+
+    private static byte[] payload(String text) {
+        return ("{\"title\":\"" + text + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<byte[]> replay(WebhookSpool spool, List<Long> refs) {
+        List<byte[]> payloads = new ArrayList<>();
+        spool.replay((url, payload, ref) -> {
+            assertEquals(URL, url);
+            payloads.add(payload);
+            refs.add(ref);
+        });
+        return payloads;
+    }
+
+    @Test
+    void replaysOnlyUnacknowledgedRecords() {
+        WebhookSpool first = open(64, 64);
+        long a = first.append(URL, payload("a"));
+        long b = first.append(URL, payload("b"));
+        long c = first.append(URL, payload("c"));
+        assertNotEquals(WebhookSpool.NO_REF, a);
+        first.ack(b);
+        assertNull(first.read(b));
+        assertArrayEquals(payload("c"), first.read(c));
+        first.close();
+
+        WebhookSpool second = open(64, 64);
+        List<Long> refs = new ArrayList<>();
+        List<byte[]> payloads = replay(second, refs);
+        assertEquals(2, payloads.size());
+        assertArrayEquals(payload("a"), payloads.get(0));
+        assertArrayEquals(payload("c"), payloads.get(1));
+        // The refs point at the copies in the new segment
+        assertArrayEquals(payload("c"), second.read(refs.get(1)));
+        refs.forEach(second::ack);
+        second.close();
+
+        assertEquals(0, replay(open(64, 64), new ArrayList<>()).size());
+    }
+
+    @Test
+    void replayThatDiesHalfwayLosesNothing() {
+        WebhookSpool first = open(64, 64);
+        for (String text : List.of("a", "b", "c")) first.append(URL, payload(text));
+        first.close();
+
+        // The server dies while the replayed records are handed out
+        WebhookSpool crashed = open(64, 64);
+        assertThrows(IllegalStateException.class, () -> crashed.replay((url, payload, ref) -> {
+            throw new IllegalStateException("killed");
+        }));
+
+        List<byte[]> payloads = replay(open(64, 64), new ArrayList<>());
+        assertEquals(3, payloads.size());
+        assertArrayEquals(payload("c"), payloads.get(2));
+    }
+
+    @Test
+    void skipsTornAndCorruptRecords() throws IOException {
+        WebhookSpool spool = open(64, 64);
+        long a = spool.append(URL, payload("a"));
+        long b = spool.append(URL, payload("b"));
+        spool.close();
+
+        File segment = directory.toFile().listFiles((dir, name) -> name.endsWith(".seg"))[0];
+        int urlLength = URL.getBytes(StandardCharsets.UTF_8).length;
+        int recordSize = 9 + 2 + urlLength + payload("b").length;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Flip a payload byte of the first record, its checksum no longer matches
+            long firstPayload = (int) a + 9 + 2 + urlLength;
+            file.seek(firstPayload);
+            int original = file.read();
+            file.seek(firstPayload);
+            file.write(original ^ 0x20);
+            // A record whose body made it to disk but whose length (written last) did not
+            file.seek((int) b + recordSize + 9);
+            file.write(payload("torn"));
+        }
+
+        List<byte[]> payloads = replay(open(64, 64), new ArrayList<>());
+        assertEquals(1, payloads.size());
+        assertArrayEquals(payload("b"), payloads.get(0));
+    }
+
+    @Test
+    void replayKeepsEveryRecordNearTheDiskBudget() {
+        // About 0.9 MB of records in 64 KiB segments with a 1 MB budget
+        byte[] big = new byte[8 * 1024];
+        WebhookSpool first = open(64, 1);
+        for (int i = 0; i < 110; i++) {
+            assertNotEquals(WebhookSpool.NO_REF, first.append(URL, big));
+        }
+        assertEquals(0, first.getLostRecords());
+        first.close();
+
+        WebhookSpool second = open(64, 1);
+        List<Long> refs = new ArrayList<>();
+        long[] peakUsage = new long[1];
+        second.replay((url, payload, ref) -> {
+            refs.add(ref);
+            peakUsage[0] = Math.max(peakUsage[0], diskUsage());
+        });
+        assertEquals(110, refs.size());
+        assertEquals(0, second.getLostRecords());
+        assertTrue(peakUsage[0] <= 1024 * 1024 + 64 * 1024, "replay used " + peakUsage[0] + " bytes");
+        for (long ref : refs) {
+            assertArrayEquals(big, second.read(ref), "replayed record was discarded");
+        }
+    }
+
+    @Test
+    void replayDoesNotDiscardRecordsAfterTheBudgetShrank() {
+        byte[] big = new byte[8 * 1024];
+        WebhookSpool first = open(64, 4);
+        for (int i = 0; i < 200; i++) first.append(URL, big);
+        first.close();
+
+        // 1.6 MB waiting, the budget is now 1 MB: replay keeps them, new embeds make room again
+        WebhookSpool second = open(64, 1);
+        List<Long> refs = new ArrayList<>();
+        assertEquals(200, replay(second, refs).size());
+        assertEquals(0, second.getLostRecords());
+        for (long ref : refs) assertArrayEquals(big, second.read(ref));
+
+        // The next segment opened for new embeds drops the oldest replayed ones again
+        for (int i = 0; i < 10; i++) second.append(URL, big);
+        assertTrue(second.getLostRecords() > 0);
+        assertTrue(second.getDiskUsage() <= 1024 * 1024);
+    }
+
+    private long diskUsage() {
+        long total = 0;
+        for (File file : directory.toFile().listFiles()) total += file.length();
+        return total;
+    }
+
+    @Test
+    void acknowledgedSegmentsAreDeleted() {
+        WebhookSpool spool = open(64, 64);
+        byte[] big = new byte[16 * 1024];
+        List<Long> refs = new ArrayList<>();
+        for (int i = 0; i < 12; i++) refs.add(spool.append(URL, big));
+        long usage = spool.getDiskUsage();
+        refs.subList(0, 8).forEach(spool::ack);
+        assertEquals(usage - 2 * 64 * 1024, spool.getDiskUsage());
+    }
+}